@@ -0,0 +1,89 @@
+/* BenchmarkCorpus.java */
+
+package player;
+
+import board.*;
+import java.util.Random;
+
+/**
+* The fixed positions the benchmarks run over.  Each position is the end of a random game
+* played from a fixed seed, so the corpus is the same on every run as long as the rules do not
+* change.  Add-phase positions have 8 to 15 pieces on the board; step-phase positions have all
+* 20 pieces placed and 4 to 16 step moves played.  No position has a network on the board.
+*/
+final class BenchmarkCorpus {
+
+    static final int SIZE = 8; // Positions in each phase
+    private static final long SEED = 0x4E6574776F726BL;
+
+    private BenchmarkCorpus() {
+    }
+
+    /**
+    * Returns the move codes, alternating white then black, that lead to a corpus position
+    *
+    * @param phase "add" or "step"
+    * @param index The position, from 0 to SIZE - 1
+    * @return The game line
+    */
+    static int[] line(String phase, int index) {
+        boolean step = phase.equals("step");
+        if (!step && !phase.equals("add")) {
+            throw new IllegalArgumentException("Unknown phase " + phase);
+        }
+        Random random = new Random(SEED + (step ? SIZE : 0) + index);
+        int plies = step ? 24 + random.nextInt(13) : 8 + random.nextInt(8);
+        int[] line = new int[plies];
+        int[] buffer = new int[MoveGenerator.MAX_MOVES];
+        Board board = new Board();
+        for (int ply = 0; ply < plies; ply++) {
+            int color = (ply % 2 == 0) ? Board.WHITE : Board.BLACK;
+            int n = MoveGenerator.generate(board, color, (ply < 20) ? Move.ADD : Move.STEP, buffer);
+            // Draw moves without replacement until one leaves no network on the board
+            int code = MoveEncoding.NONE;
+            for (int left = n; (left > 0) && (code == MoveEncoding.NONE); left--) {
+                int i = random.nextInt(left);
+                int candidate = buffer[i];
+                buffer[i] = buffer[left - 1];
+                MoveGenerator.make(board, color, candidate);
+                if (NetworkFinder.hasWinningNetwork(Board.WHITE, board) ||
+                    NetworkFinder.hasWinningNetwork(Board.BLACK, board)) {
+                    MoveGenerator.unmake(board, color, candidate);
+                } else {
+                    code = candidate;
+                }
+            }
+            if (code == MoveEncoding.NONE) {
+                throw new IllegalStateException("No quiet move in " + phase + " position " + index);
+            }
+            line[ply] = code;
+        }
+        return line;
+    }
+
+    /**
+    * Returns a new board holding a corpus position
+    */
+    static Board board(String phase, int index) {
+        return Positions.board(line(phase, index));
+    }
+
+    /**
+    * Returns the color to move in a corpus position
+    */
+    static int toMove(String phase, int index) {
+        return Positions.toMove(line(phase, index));
+    }
+
+    /**
+    * Returns a new player, of the color to move, that has played out a corpus position
+    *
+    * @param phase "add" or "step"
+    * @param index The position, from 0 to SIZE - 1
+    * @param depth The player's search depth
+    * @return The player
+    */
+    static MachinePlayer player(String phase, int index, int depth) {
+        return Positions.player(line(phase, index), depth);
+    }
+}
@@ -0,0 +1,24 @@
+/* Benchmarks.java */
+
+package player;
+
+import org.openjdk.jmh.Main;
+
+/**
+* Runs the benchmarks with the GC profiler, so every result comes with its allocation rate
+* (gc.alloc.rate.norm is bytes allocated per operation).  Takes the usual JMH options, for
+* example a regular expression naming the benchmarks to run, -l to list them or -h for help;
+* they are handed to JMH's own main() after "-prof gc".
+*
+* Usage: java -jar benchmarks/target/benchmarks.jar [JMH options]
+*/
+public class Benchmarks {
+
+    public static void main(String[] args) throws Exception {
+        String[] withProfiler = new String[args.length + 2];
+        withProfiler[0] = "-prof";
+        withProfiler[1] = "gc";
+        System.arraycopy(args, 0, withProfiler, 2, args.length);
+        Main.main(withProfiler);
+    }
+}
@@ -0,0 +1,75 @@
+/* BoardBenchmark.java */
+
+package player;
+
+import board.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+* Benchmarks the connection queries of Board over every piece of every corpus position.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    @Param({ "add", "step" })
+    public String phase;
+
+    private Board[] boards;
+
+    @Setup
+    public void setUp() {
+        boards = new Board[BenchmarkCorpus.SIZE];
+        for (int i = 0; i < boards.length; i++) {
+            boards[i] = BenchmarkCorpus.board(phase, i);
+        }
+    }
+
+    // The list of connections of every piece, as the network finder once walked them
+    @Benchmark
+    public void connections(Blackhole blackhole) {
+        for (Board board : boards) {
+            for (int sq = 0; sq < 64; sq++) {
+                int piece = board.pieceAt(sq);
+                if (piece != Board.EMPTY) {
+                    blackhole.consume(board.connections(piece, Board.squareX(sq), Board.squareY(sq)));
+                }
+            }
+        }
+    }
+
+    // The ray-table connection mask of every piece
+    @Benchmark
+    public int connectionMask() {
+        int total = 0;
+        for (Board board : boards) {
+            for (int sq = 0; sq < 64; sq++) {
+                int piece = board.pieceAt(sq);
+                if (piece != Board.EMPTY) {
+                    total += board.connectionMask(piece, sq);
+                }
+            }
+        }
+        return total;
+    }
+
+    // Adding and removing a piece, which keeps the connection counts up to date
+    @Benchmark
+    public int addRemove() {
+        int total = 0;
+        for (Board board : boards) {
+            long empty = ~board.occupied() & 0x007E7E7E7E7E7E00L;
+            int sq = Long.numberOfTrailingZeros(empty);
+            board.add(Board.WHITE, Board.squareX(sq), Board.squareY(sq));
+            total += board.connectionCount(Board.WHITE);
+            board.remove(Board.squareX(sq), Board.squareY(sq));
+        }
+        return total;
+    }
+}
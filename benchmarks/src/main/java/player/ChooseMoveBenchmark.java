@@ -0,0 +1,50 @@
+/* ChooseMoveBenchmark.java */
+
+package player;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+* Benchmarks a full fixed-depth chooseMove().  Each operation searches the next corpus position
+* in turn.  The move is taken back afterwards, which also clears the transposition table and
+* the move ordering state, so every search of a position starts cold and does the same work.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ChooseMoveBenchmark {
+
+    @Param({ "add", "step" })
+    public String phase;
+
+    @Param({ "2", "3", "4", "5" })
+    public int depth;
+
+    private MachinePlayer[] players;
+    private int index = 0; // The position the next operation searches
+    private Move chosen; // The move the last operation chose, or null
+
+    @Setup
+    public void setUp() {
+        players = new MachinePlayer[BenchmarkCorpus.SIZE];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = BenchmarkCorpus.player(phase, i, depth);
+        }
+    }
+
+    @Benchmark
+    public Move chooseMove() {
+        chosen = players[index].chooseMove();
+        return chosen;
+    }
+
+    @TearDown(Level.Invocation)
+    public void takeBack() {
+        players[index].takeBack(chosen);
+        index = (index + 1) % players.length;
+    }
+}
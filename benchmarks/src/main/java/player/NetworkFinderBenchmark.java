@@ -0,0 +1,63 @@
+/* NetworkFinderBenchmark.java */
+
+package player;
+
+import board.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+* Benchmarks network finding over the corpus positions: the full enumeration of networks from
+* each start-line piece, and the bitboard test for a win.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetworkFinderBenchmark {
+
+    @Param({ "add", "step" })
+    public String phase;
+
+    private Board[] boards;
+
+    @Setup
+    public void setUp() {
+        boards = new Board[BenchmarkCorpus.SIZE];
+        for (int i = 0; i < boards.length; i++) {
+            boards[i] = BenchmarkCorpus.board(phase, i);
+        }
+    }
+
+    // networksFromStart() from every piece of either color on its start goal line
+    @Benchmark
+    public void networksFromStart(Blackhole blackhole) {
+        for (Board board : boards) {
+            for (int color = Board.BLACK; color <= Board.WHITE; color++) {
+                long starts = board.pieces(color) & NetworkFinder.startGoalLine(color);
+                while (starts != 0) {
+                    int sq = Long.numberOfTrailingZeros(starts);
+                    starts &= starts - 1;
+                    blackhole.consume(NetworkFinder.networksFromStart(Board.squareX(sq), Board.squareY(sq), color, board));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int hasWinningNetwork() {
+        int wins = 0;
+        for (Board board : boards) {
+            if (NetworkFinder.hasWinningNetwork(Board.WHITE, board)) {
+                wins++;
+            }
+            if (NetworkFinder.hasWinningNetwork(Board.BLACK, board)) {
+                wins++;
+            }
+        }
+        return wins;
+    }
+}
@@ -0,0 +1,47 @@
+/* ParallelSearchBenchmark.java */
+
+package player;
+
+/**
+* Measures how the parallel search scales.  For each thread count, a fresh player searches
+* Positions.SEARCH to a fixed depth, and the time to depth and nodes per second are printed.
+*
+* Usage: java -cp benchmarks/target/benchmarks.jar player.ParallelSearchBenchmark [depth]
+*/
+public class ParallelSearchBenchmark {
+
+    private static final int[] THREADS = { 1, 2, 4, 8, 16 };
+
+    public static void main(String[] args) {
+        int depth = 4;
+        if (args.length > 0) {
+            depth = Integer.parseInt(args[0]);
+        }
+        System.out.println("Depth " + depth + ", " + Runtime.getRuntime().availableProcessors() + " processors");
+        // Warm up the JIT so the single-thread row is not penalised
+        for (int pos = 0; pos < Positions.SEARCH.length; pos++) {
+            Positions.player(Positions.line(Positions.SEARCH[pos]), depth).chooseMove();
+        }
+        System.out.println("threads        ms       nodes    nodes/sec  speedup");
+        double baseMillis = 0;
+        for (int t = 0; t < THREADS.length; t++) {
+            long nanos = 0;
+            long nodes = 0;
+            for (int pos = 0; pos < Positions.SEARCH.length; pos++) {
+                MachinePlayer p = Positions.player(Positions.line(Positions.SEARCH[pos]), depth);
+                p.setSearchThreads(THREADS[t]);
+                long start = System.nanoTime();
+                p.chooseMove();
+                nanos += System.nanoTime() - start;
+                nodes += p.nodesSearched();
+                p.setSearchThreads(1);
+            }
+            double millis = nanos / 1e6;
+            if (t == 0) {
+                baseMillis = millis;
+            }
+            System.out.println(String.format("%7d %9.1f %11d %12.0f %8.2f",
+                THREADS[t], millis, nodes, nodes / (nanos / 1e9), baseMillis / millis));
+        }
+    }
+}
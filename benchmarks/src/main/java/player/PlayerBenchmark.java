@@ -0,0 +1,105 @@
+/* PlayerBenchmark.java */
+
+package player;
+
+import board.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+* Benchmarks the per-position work of MachinePlayer over the corpus positions: the win test,
+* the evaluation, and finding the legal moves both by generating them as bitmasks and by
+* asking isValidMove() about every candidate.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayerBenchmark {
+
+    @Param({ "add", "step" })
+    public String phase;
+
+    private MachinePlayer[] players;
+    private Board[] boards;
+    private int[] colors; // The Board color to move in each position
+    private int[] buffer = new int[MoveGenerator.MAX_MOVES];
+
+    @Setup
+    public void setUp() {
+        players = new MachinePlayer[BenchmarkCorpus.SIZE];
+        boards = new Board[BenchmarkCorpus.SIZE];
+        colors = new int[BenchmarkCorpus.SIZE];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = BenchmarkCorpus.player(phase, i, 1);
+            boards[i] = BenchmarkCorpus.board(phase, i);
+            colors[i] = BenchmarkCorpus.toMove(phase, i);
+        }
+    }
+
+    @Benchmark
+    public int hasWonGame() {
+        int wins = 0;
+        for (MachinePlayer p : players) {
+            if (p.hasWonGame(Board.WHITE)) {
+                wins++;
+            }
+            if (p.hasWonGame(Board.BLACK)) {
+                wins++;
+            }
+        }
+        return wins;
+    }
+
+    @Benchmark
+    public int evaluateBoard() {
+        int total = 0;
+        for (MachinePlayer p : players) {
+            total += p.evaluateBoard();
+        }
+        return total;
+    }
+
+    // Every legal move of the side to move, from MoveGenerator
+    @Benchmark
+    public int generateMoves() {
+        int total = 0;
+        for (int i = 0; i < players.length; i++) {
+            int color = colors[i];
+            total += MoveGenerator.generate(boards[i], color, players[i].nextMoveType(color), buffer);
+        }
+        return total;
+    }
+
+    // Every legal move of the side to move, by trying each candidate with isValidMove()
+    @Benchmark
+    public int isValidMove() {
+        int total = 0;
+        for (int i = 0; i < players.length; i++) {
+            MachinePlayer p = players[i];
+            int color = colors[i];
+            if (p.nextMoveType(color) == Move.ADD) {
+                for (int sq = 0; sq < 64; sq++) {
+                    if (p.isValidMove(color, new Move(Board.squareX(sq), Board.squareY(sq)))) {
+                        total++;
+                    }
+                }
+            } else {
+                long pieces = boards[i].pieces(color);
+                while (pieces != 0) {
+                    int from = Long.numberOfTrailingZeros(pieces);
+                    pieces &= pieces - 1;
+                    for (int to = 0; to < 64; to++) {
+                        Move m = new Move(Board.squareX(to), Board.squareY(to), Board.squareX(from), Board.squareY(from));
+                        if (p.isValidMove(color, m)) {
+                            total++;
+                        }
+                    }
+                }
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,142 @@
+/* SearchBenchmark.java */
+
+package player;
+
+import board.*;
+
+/**
+* Compares search configurations on the search positions of Positions.  Each
+* configuration searches every position to a fixed depth with a fresh single-threaded player,
+* and the total nodes and time to depth are printed along with the expected line for each
+* position.  Then each selective configuration plays a match against plain principal variation
+* search, both sides given the same time per move, to show what its speed buys in strength.
+*
+* Usage: java -cp benchmarks/target/benchmarks.jar player.SearchBenchmark [depth] [games] [millis per move]
+*/
+public class SearchBenchmark {
+
+    private static final String[] CONFIGURATIONS = { "alpha-beta", "pvs", "lmr", "futility", "lmr+futility" };
+    private static final String BASELINE = "pvs"; // The unpruned search the others play against
+    private static final int FUTILITY_MARGIN = 4;
+    private static final int MAX_GAME_MOVES = 200; // A match game this long is scored as a draw
+
+    // Applies the named configuration to a player
+    private static void configure(MachinePlayer p, String configuration) {
+        p.setPrincipalVariationSearch(!configuration.equals("alpha-beta"));
+        p.setLateMoveReductions(configuration.startsWith("lmr"));
+        p.setFutilityMargin(configuration.endsWith("futility") ? FUTILITY_MARGIN : 0);
+    }
+
+    /**
+    * Plays one game between two configurations with the given time per move.  The first two
+    * moves are random adds, chosen from the seed, so that games differ.
+    *
+    * @return Board.WHITE or Board.BLACK for the winner, or Board.EMPTY for a draw
+    */
+    private static int playGame(String whiteConfiguration, String blackConfiguration, long millis, long seed) {
+        MachinePlayer white = new MachinePlayer(1);
+        MachinePlayer black = new MachinePlayer(0);
+        configure(white, whiteConfiguration);
+        configure(black, blackConfiguration);
+        try {
+            return playGame(white, black, millis, seed);
+        } finally {
+            white.close();
+            black.close();
+        }
+    }
+
+    // Plays out the game between two configured players
+    private static int playGame(MachinePlayer white, MachinePlayer black, long millis, long seed) {
+        java.util.Random random = new java.util.Random(seed);
+        MachinePlayer mover = white;
+        MachinePlayer waiter = black;
+        for (int i = 0; i < MAX_GAME_MOVES; i++) {
+            Move m;
+            if (i < 2) {
+                do {
+                    m = new Move(1 + random.nextInt(6), 1 + random.nextInt(6));
+                } while (!mover.forceMove(m));
+            } else {
+                m = mover.chooseMove(millis);
+            }
+            waiter.opponentMove(m);
+            // A move that completes both colors' networks wins for the other color
+            if (mover.hasWonGame(waiter.getColor())) {
+                return waiter.getColor();
+            }
+            if (mover.hasWonGame(mover.getColor())) {
+                return mover.getColor();
+            }
+            MachinePlayer t = mover;
+            mover = waiter;
+            waiter = t;
+        }
+        return Board.EMPTY;
+    }
+
+    public static void main(String[] args) {
+        int depth = 4;
+        int games = 10;
+        long millis = 50;
+        if (args.length > 0) {
+            depth = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            games = Integer.parseInt(args[1]);
+        }
+        if (args.length > 2) {
+            millis = Long.parseLong(args[2]);
+        }
+        int positions = Positions.SEARCH.length;
+        // Warm up the JIT before timing anything
+        for (int c = 0; c < CONFIGURATIONS.length; c++) {
+            for (int pos = 0; pos < positions; pos++) {
+                MachinePlayer p = Positions.player(Positions.line(Positions.SEARCH[pos]), depth);
+                configure(p, CONFIGURATIONS[c]);
+                p.chooseMove();
+            }
+        }
+        System.out.println("Depth " + depth);
+        for (int c = 0; c < CONFIGURATIONS.length; c++) {
+            long nanos = 0;
+            long nodes = 0;
+            StringBuilder lines = new StringBuilder();
+            for (int pos = 0; pos < positions; pos++) {
+                MachinePlayer p = Positions.player(Positions.line(Positions.SEARCH[pos]), depth);
+                configure(p, CONFIGURATIONS[c]);
+                long start = System.nanoTime();
+                p.chooseMove();
+                nanos += System.nanoTime() - start;
+                nodes += p.nodesSearched();
+                lines.append("    ").append(java.util.Arrays.toString(p.principalVariation())).append("\n");
+            }
+            System.out.println(String.format("%-12s %9.1f ms %11d nodes", CONFIGURATIONS[c], nanos / 1e6, nodes));
+            System.out.print(lines);
+        }
+        System.out.println(games + " games per match against " + BASELINE + ", " + millis + " ms per move");
+        for (int c = 0; c < CONFIGURATIONS.length; c++) {
+            if (!CONFIGURATIONS[c].startsWith("lmr") && !CONFIGURATIONS[c].endsWith("futility")) {
+                continue;
+            }
+            int wins = 0;
+            int losses = 0;
+            for (int g = 0; g < games; g++) {
+                // Alternate colors, and play each opening from both sides
+                boolean white = (g % 2 == 0);
+                int winner;
+                if (white) {
+                    winner = playGame(CONFIGURATIONS[c], BASELINE, millis, g / 2);
+                } else {
+                    winner = playGame(BASELINE, CONFIGURATIONS[c], millis, g / 2);
+                }
+                if (winner == (white ? Board.WHITE : Board.BLACK)) {
+                    wins++;
+                } else if (winner != Board.EMPTY) {
+                    losses++;
+                }
+            }
+            System.out.println(String.format("%-12s %3d won %3d lost %3d drawn", CONFIGURATIONS[c], wins, losses, games - wins - losses));
+        }
+    }
+}
@@ -4,6 +4,10 @@ import list.*;
 
 /**
  *  Implements board of the game Network. 
+ *
+ *  The board is stored as two 64-bit masks, one per color.  Square (x, y)
+ *  maps to bit x + 8 * y, so the top row occupies the low byte and the
+ *  bottom row the high byte.
  */
 
 public class Board {
@@ -12,18 +16,82 @@ public class Board {
     public final static int BLACK = 1;
     public final static int WHITE = 2;
 
-    private int[][] board = new int[8][8];
+    public final static long LEFT_HOME_ROW = 0x0101010101010101L;    //x == 0
+    public final static long RIGHT_HOME_ROW = LEFT_HOME_ROW << 7;     //x == 7
+    public final static long TOP_HOME_ROW = 0x00000000000000FFL;     //y == 0
+    public final static long BOTTOM_HOME_ROW = TOP_HOME_ROW << 56;    //y == 7
+    public final static long CORNERS = (LEFT_HOME_ROW | RIGHT_HOME_ROW) & (TOP_HOME_ROW | BOTTOM_HOME_ROW);
+
+    private long blackPieces = 0;   //one bit per black piece
+    private long whitePieces = 0;   //one bit per white piece
+    private long hash = 0;          //Zobrist key of the pieces on the board
+    private int[] connectionCounts = new int[3]; //total connections of each color's pieces, by color
+    private long[] clusterMasks = new long[3];   //squares where each color would form a cluster, by color
+
+    /**
+    * Constructs an empty board
+    */
+    public Board() {
+    }
+
+    /**
+    * Constructs a copy of another board
+    *
+    * @param other The board to copy
+    */
+    public Board(Board other) {
+        blackPieces = other.blackPieces;
+        whitePieces = other.whitePieces;
+        hash = other.hash;
+        connectionCounts[BLACK] = other.connectionCounts[BLACK];
+        connectionCounts[WHITE] = other.connectionCounts[WHITE];
+        clusterMasks[BLACK] = other.clusterMasks[BLACK];
+        clusterMasks[WHITE] = other.clusterMasks[WHITE];
+    }
+
+    /**
+    * Returns the bit index of (x, y)
+    *
+    * @param x The x-coordinate
+    * @param y The y-coordinate
+    * @return The square number, from 0 to 63
+    */
+    public static int square(int x, int y) {
+        return x + (y << 3);
+    }
+
+    /**
+    * Returns the x-coordinate of a square number
+    *
+    * @param square The square number
+    * @return The x-coordinate
+    */
+    public static int squareX(int square) {
+        return square & 7;
+    }
+
+    /**
+    * Returns the y-coordinate of a square number
+    *
+    * @param square The square number
+    * @return The y-coordinate
+    */
+    public static int squareY(int square) {
+        return square >>> 3;
+    }
 
     /**
     * Modifies the board to be empty 
     *
     */	
     public void clearBoard() {
-        for (int i = 0; i <= 7; i++) {
-            for (int j = 0; j <= 7; j++) {
-                board[i][j] = EMPTY;
-            }
-        }
+        blackPieces = 0;
+        whitePieces = 0;
+        hash = 0;
+        connectionCounts[BLACK] = 0;
+        connectionCounts[WHITE] = 0;
+        clusterMasks[BLACK] = 0;
+        clusterMasks[WHITE] = 0;
     }
 
      /**
@@ -34,7 +102,22 @@ public class Board {
       * @param y The y-coordinate of the piece
       */
     public void add(int color, int x, int y) {
-        board[x][y] = color;
+        int square = square(x, y);
+        long bit = 1L << square;
+        remove(x, y);
+        if ((color != BLACK) && (color != WHITE)) {
+            return;
+        }
+        updateConnectionCounts(square, -1);
+        if (color == BLACK) {
+            blackPieces |= bit;
+            hash ^= ZOBRIST_BLACK[square];
+        } else {
+            whitePieces |= bit;
+            hash ^= ZOBRIST_WHITE[square];
+        }
+        updateConnectionCounts(square, 1);
+        clusterMasks[color] = clusterSquares(pieces(color));
     }
 
      /**
@@ -44,7 +127,55 @@ public class Board {
       * @param y The y-coordinate of the piece
       */
     public void remove(int x, int y) {
-        board[x][y] = EMPTY;
+        int square = square(x, y);
+        long bit = 1L << square;
+        if (((blackPieces | whitePieces) & bit) == 0) {
+            return;
+        }
+        updateConnectionCounts(square, -1);
+        if ((blackPieces & bit) != 0) {
+            blackPieces &= ~bit;
+            hash ^= ZOBRIST_BLACK[square];
+            clusterMasks[BLACK] = clusterSquares(blackPieces);
+        } else {
+            whitePieces &= ~bit;
+            hash ^= ZOBRIST_WHITE[square];
+            clusterMasks[WHITE] = clusterSquares(whitePieces);
+        }
+        updateConnectionCounts(square, 1);
+    }
+
+     /**
+      * Adds (sign 1) or subtracts (sign -1) every connection that can change when square
+      * changes: those of the piece on square, and the one ray of each nearest piece in the
+      * eight directions that points back at square.  Called with -1 before and 1 after a
+      * change, so the counts track the board.
+      *
+      * @param square The square about to change or just changed
+      * @param sign 1 or -1
+      */
+    private void updateConnectionCounts(int square, int sign) {
+        long occupied = blackPieces | whitePieces;
+        int color = pieceAt(square);
+        if (color != EMPTY) {
+            connectionCounts[color] += sign * Integer.bitCount(connectionMask(color, square));
+        }
+        for (int d = 0; d < NUM_RAYS; d++) {
+            long pieces = LINE_MASKS[(square << 3) + d] & occupied;
+            if (pieces == 0) {
+                continue;
+            }
+            int nearest;
+            if (RAY_ASCENDING[d]) {
+                nearest = Long.numberOfTrailingZeros(pieces);
+            } else {
+                nearest = 63 - Long.numberOfLeadingZeros(pieces);
+            }
+            int nearestColor = pieceAt(nearest);
+            if (connectionTo(nearestColor, nearest, RAY_OPPOSITE[d]) >= 0) {
+                connectionCounts[nearestColor] += sign;
+            }
+        }
     }
 
      /**
@@ -55,7 +186,126 @@ public class Board {
       * @return Piece at location (x, y) of board
       */
     public int piece(int x, int y) {
-        return board[x][y];
+        return pieceAt(square(x, y));
+    }
+
+     /**
+      * Returns the piece on a square of the board
+      *
+      * @param square The square number
+      * @return Piece on that square
+      */
+    public int pieceAt(int square) {
+        if (((blackPieces >>> square) & 1L) != 0) {
+            return BLACK;
+        } else if (((whitePieces >>> square) & 1L) != 0) {
+            return WHITE;
+        }
+        return EMPTY;
+    }
+
+     /**
+      * Returns a mask with one bit set per piece of the given color
+      *
+      * @param color The color of the pieces
+      * @return Mask of that color's pieces, or 0 for any other value
+      */
+    public long pieces(int color) {
+        if (color == BLACK) {
+            return blackPieces;
+        } else if (color == WHITE) {
+            return whitePieces;
+        }
+        return 0;
+    }
+
+     /**
+      * Returns a mask with one bit set per occupied square
+      *
+      * @return Mask of all pieces on the board
+      */
+    public long occupied() {
+        return blackPieces | whitePieces;
+    }
+
+     /**
+      * Returns the total number of connections of the given color's pieces, as counted by
+      * connections().  Maintained incrementally by add() and remove().
+      *
+      * @param color The color of the pieces
+      * @return The sum of the number of connections of each piece
+      */
+    public int connectionCount(int color) {
+        return connectionCounts[color];
+    }
+
+     /**
+      * Returns the empty squares where a piece of the given color would form a cluster of
+      * three or more adjacent pieces.  Maintained by add() and remove().
+      *
+      * @param color The color of the pieces
+      * @return Mask of the squares that color may not move to
+      */
+    public long clusterSquares(int color) {
+        return clusterMasks[color] & ~(blackPieces | whitePieces);
+    }
+
+     /**
+      * Returns the squares where one more piece would form a cluster with the given pieces:
+      * squares next to two or more of them, or next to one that already has a neighbour.
+      * The result may include squares of the mask itself.
+      *
+      * @param pieces Mask of one color's pieces
+      * @return Mask of the squares a piece of that color may not move to
+      */
+    public static long clusterSquares(long pieces) {
+        long once = 0;
+        long twice = 0;
+        long nextToPair = 0;
+        long rest = pieces;
+        while (rest != 0) {
+            long around = NEIGHBOURS[Long.numberOfTrailingZeros(rest)];
+            rest &= rest - 1;
+            twice |= once & around;
+            once |= around;
+            if ((around & pieces) != 0) {
+                nextToPair |= around;
+            }
+        }
+        return twice | nextToPair;
+    }
+
+     /**
+      * Returns the Zobrist key of the pieces on the board.  Maintained
+      * incrementally by add() and remove().
+      *
+      * @return 64-bit key of the current position
+      */
+    public long hashKey() {
+        return hash;
+    }
+
+     /**
+      * Returns the Zobrist key of the board with the given color to move
+      *
+      * @param toMove The color of the player to move
+      * @return 64-bit key of the current position and side to move
+      */
+    public long hashKey(int toMove) {
+        if (toMove == WHITE) {
+            return hash ^ ZOBRIST_WHITE_TO_MOVE;
+        }
+        return hash;
+    }
+
+     /**
+      * Returns the number of pieces of the given color on the board
+      *
+      * @param color The color of the pieces
+      * @return The number of pieces
+      */
+    public int numPieces(int color) {
+        return Long.bitCount(pieces(color));
     }
     
    /**
@@ -109,16 +359,7 @@ public class Board {
   * @return Whether the coordinate (x,y) is a corner of the board
   */
   public boolean isCorner(int x, int y) {
-    if ((x == 0) && (y == 0))
-        return true;
-    else if ((x == 7) && (y == 0))
-        return true;
-    else if ((x == 0) && (y == 7))
-        return true;
-    else if ((x == 7) && (y == 7))
-        return true;
-    else
-        return false;
+    return onBoard(x, y) && ((CORNERS >>> square(x, y)) & 1L) != 0;
   }
   
   /**
@@ -144,121 +385,223 @@ public class Board {
       * 2) if (x,y) is either the bottom homerow or the right homerow, it has no connections
       * 3) no connection of (x, y) can be in the top homerow or the left homerow	
       *
+      * The coordinates are listed in ray order: north, south, west, east, northeast,
+      * southeast, southwest, northwest.
+      *
       * @param color The color of the piece
       * @param x The x-coordinate of the piece
       * @param y The y-coordinate of the piece
       * @return DList of coordinates
       */
     public DList connections(int color, int x, int y) {
-        if (inBottomHomeRow(x, y) || inRightHomeRow(x, y)) {
-            return new DList();
+        DList conn = new DList();
+        int square = square(x, y);
+        for (int d = 0; d < NUM_RAYS; d++) {
+            int target = connectionTo(color, square, d);
+            if (target >= 0) {
+                conn.insertBack(new Coordinate(squareX(target), squareY(target)));
+            }
         }
-        int oppColor;
+        return conn;
+    }
 
-        if (color == BLACK) {
-            oppColor = WHITE;
+      /**
+      * Returns a mask with bit d set if the piece on square has a connection along ray d
+      *
+      * @param color The color of the piece
+      * @param square The square of the piece
+      * @return An 8-bit mask of ray indices
+      */
+    public int connectionMask(int color, int square) {
+        int mask = 0;
+        for (int d = 0; d < NUM_RAYS; d++) {
+            if (connectionTo(color, square, d) >= 0) {
+                mask |= 1 << d;
+            }
+        }
+        return mask;
+    }
+
+      /**
+      * Returns the square directly connected to square along ray d, or -1 if the
+      * first piece on that ray is the opponent's or there is none.
+      *
+      * @param color The color of the piece
+      * @param square The square of the piece
+      * @param d The ray index, from 0 to NUM_RAYS - 1
+      * @return The connected square, or -1
+      */
+    public int connectionTo(int color, int square, int d) {
+        long blockers = RAY_MASKS[(square << 3) + d] & (blackPieces | whitePieces);
+        if (blockers == 0) {
+            return -1;
+        }
+        int first;
+        if (RAY_ASCENDING[d]) {
+            first = Long.numberOfTrailingZeros(blockers);
         } else {
-            oppColor = BLACK;
+            first = 63 - Long.numberOfLeadingZeros(blockers);
         }
-        DList conn = new DList();
-        
-        //North
-        if (!inLeftHomeRow(x, y)) {
-            for(int i = y - 1; i > 0; i--) {
-                if (board[x][i] == color) {
-                    conn.insertBack(new Coordinate(x, i));
-                    break;
-                } else if (board[x][i] == oppColor) {
-                    break;
-                }
+        if (((pieces(color) >>> first) & 1L) != 0) {
+            return first;
+        }
+        return -1;
+    }
+
+      /**
+      * Returns the empty squares a piece on the given square can see: along each ray, every
+      * square before the first piece.  A piece of the same color added on one of them would
+      * be connected to it.
+      *
+      * @param square The square of the piece
+      * @return Mask of the squares
+      */
+    public long sightSquares(int square) {
+        long all = blackPieces | whitePieces;
+        long squares = 0;
+        for (int d = 0; d < NUM_RAYS; d++) {
+            long ray = RAY_MASKS[(square << 3) + d];
+            long blockers = ray & all;
+            if (blockers == 0) {
+                squares |= ray;
+            } else if (RAY_ASCENDING[d]) {
+                squares |= ray & ((1L << Long.numberOfTrailingZeros(blockers)) - 1);
+            } else {
+                squares |= ray & ~((2L << (63 - Long.numberOfLeadingZeros(blockers))) - 1);
             }
         }
-        //South
-        if (!inLeftHomeRow(x, y)) {
-            for (int i = y + 1; i <= 7; i++) {
-                if (board[x][i] == color) {
-                    conn.insertBack(new Coordinate(x, i));
-                    break;
-                } else if (board[x][i] == oppColor) {
-                    break;
+        return squares;
+    }
+
+      /**
+      * Returns the empty squares lying between two connected pieces of the given color.  A
+      * piece of the other color placed on any of them cuts a connection.
+      *
+      * @param color The color of the pieces
+      * @return Mask of the squares
+      */
+    public long connectionSquares(int color) {
+        long own = pieces(color);
+        long all = blackPieces | whitePieces;
+        long squares = 0;
+        long rest = own;
+        while (rest != 0) {
+            int square = Long.numberOfTrailingZeros(rest);
+            rest &= rest - 1;
+            for (int d = 0; d < NUM_RAYS; d++) {
+                long ray = RAY_MASKS[(square << 3) + d];
+                long blockers = ray & all;
+                if (blockers == 0) {
+                    continue;
+                }
+                int first;
+                long before;
+                if (RAY_ASCENDING[d]) {
+                    first = Long.numberOfTrailingZeros(blockers);
+                    before = (1L << first) - 1;
+                } else {
+                    first = 63 - Long.numberOfLeadingZeros(blockers);
+                    before = ~((2L << first) - 1);
+                }
+                if (((own >>> first) & 1L) != 0) {
+                    squares |= ray & before;
                 }
             }
         }
-         //West
-        if (!inTopHomeRow(x, y)) {
-            for(int i = x - 1; i > 0; i--) {
-                if (board[i][y] == color) {
-                    conn.insertBack(new Coordinate(i, y));
-                    break;
-                } else if (board[i][y] == oppColor) {
-                    break;
+        return squares;
+    }
+
+    // Squares adjacent to each square
+    private final static long[] NEIGHBOURS = new long[64];
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            for (int i = squareX(sq) - 1; i <= squareX(sq) + 1; i++) {
+                for (int j = squareY(sq) - 1; j <= squareY(sq) + 1; j++) {
+                    if ((i >= 0) && (j >= 0) && (i <= 7) && (j <= 7) && (square(i, j) != sq)) {
+                        NEIGHBOURS[sq] |= 1L << square(i, j);
+                    }
                 }
             }
         }
-         //East
-        if (!inTopHomeRow(x, y)) {
-            for(int i = x + 1; i <= 7; i++) {
-                if (board[i][y] == color) {
-                    conn.insertBack(new Coordinate(i, y));
-                    break;
-                } else if (board[i][y] == oppColor) {
-                    break;
+    }
+
+    /* Zobrist keys, one per color per square plus one for white to move.
+     * Generated from a fixed seed so keys are stable across runs.
+     */
+    private final static long[] ZOBRIST_BLACK = new long[64];
+    private final static long[] ZOBRIST_WHITE = new long[64];
+    private final static long ZOBRIST_WHITE_TO_MOVE;
+
+    static {
+        long seed = 0x4E6574776F726BL;
+        for (int sq = 0; sq < 64; sq++) {
+            seed = nextZobrist(seed);
+            ZOBRIST_BLACK[sq] = mixZobrist(seed);
+            seed = nextZobrist(seed);
+            ZOBRIST_WHITE[sq] = mixZobrist(seed);
+        }
+        ZOBRIST_WHITE_TO_MOVE = mixZobrist(nextZobrist(seed));
+    }
+
+    // SplitMix64 step and finalizer
+    private static long nextZobrist(long seed) {
+        return seed + 0x9E3779B97F4A7C15L;
+    }
+
+    private static long mixZobrist(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /* Ray tables.  RAY_MASKS[(square << 3) + d] holds every square a piece on
+     * square can see along ray d, already trimmed by rules 2 and 3 of
+     * connections().  Ascending rays find their nearest piece at the lowest set
+     * bit, descending rays at the highest.
+     */
+    public final static int NUM_RAYS = 8;
+    private final static int[] RAY_DX = { 0, 0, -1, 1, 1, 1, -1, -1 };
+    private final static int[] RAY_DY = { -1, 1, 0, 0, -1, 1, 1, -1 };
+    private final static int[] RAY_OPPOSITE = { 1, 0, 3, 2, 6, 7, 4, 5 };
+    private final static boolean[] RAY_ASCENDING = new boolean[NUM_RAYS];
+    private final static long[] RAY_MASKS = new long[64 * NUM_RAYS];
+    // Untrimmed lines from each square to the edge of the board, indexed like RAY_MASKS
+    private final static long[] LINE_MASKS = new long[64 * NUM_RAYS];
+
+    static {
+        for (int d = 0; d < NUM_RAYS; d++) {
+            RAY_ASCENDING[d] = (RAY_DX[d] + 8 * RAY_DY[d]) > 0;
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            int x = squareX(sq);
+            int y = squareY(sq);
+            for (int d = 0; d < NUM_RAYS; d++) {
+                long mask = 0;
+                int i = x + RAY_DX[d];
+                int j = y + RAY_DY[d];
+                while ((i >= 0) && (j >= 0) && (i <= 7) && (j <= 7)) {
+                    mask |= 1L << square(i, j);
+                    i += RAY_DX[d];
+                    j += RAY_DY[d];
                 }
-             }
+                LINE_MASKS[(sq << 3) + d] = mask;
+            }
+            if ((x == 7) || (y == 7)) {
+                continue;
+            }
+            for (int d = 0; d < NUM_RAYS; d++) {
+                long mask = 0;
+                int i = x + RAY_DX[d];
+                int j = y + RAY_DY[d];
+                while ((i > 0) && (j > 0) && (i <= 7) && (j <= 7)) {
+                    mask |= 1L << square(i, j);
+                    i += RAY_DX[d];
+                    j += RAY_DY[d];
+                }
+                RAY_MASKS[(sq << 3) + d] = mask;
+            }
         }
-         //Northeast
-         int i = x + 1;
-         int j = y - 1;
-         while((i <= 7) && (j > 0)) {
-             if (board[i][j] == color) {
-                 conn.insertBack(new Coordinate(i, j));
-                 break;
-             } else if (board[i][j] == oppColor) {
-                 break;
-             }
-             i++;
-             j--;
-         }
-         //Southeast
-         i = x + 1;
-         j = y + 1;
-         while((i <= 7) && (j <= 7)) {
-             if (board[i][j] == color) {
-                 conn.insertBack(new Coordinate(i, j));
-                 break;
-             } else if (board[i][j] == oppColor) {
-                 break;
-             }
-             i++;
-             j++;
-         }
-         //Southwest
-         i = x - 1;
-         j = y + 1;
-         while((i > 0) && (j <= 7)) {
-             if (board[i][j] == color) {
-                 conn.insertBack(new Coordinate(i, j));
-                 break;
-             } else if (board[i][j] == oppColor) {
-                 break;
-             }
-             i--;
-             j++;
-         }
-         //Northwest
-         i = x - 1;
-         j = y - 1;
-         while((i > 0) && (j > 0)) {
-             if (board[i][j] == color) {
-                 conn.insertBack(new Coordinate(i, j));
-                 break;
-             } else if (board[i][j] == oppColor) {
-                 break;
-             }
-             i--;
-             j--;
-         }
-         return conn;
     }
     
     /**
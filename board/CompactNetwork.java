@@ -0,0 +1,194 @@
+/* CompactNetwork.java */
+
+package board;
+
+import list.*;
+
+/**
+ *  An immutable network stored as a 64-bit mask of the squares it occupies plus the squares in
+ *  path order, one byte each.  Length, endpoints and containment run in constant time, and two
+ *  networks are compared with a single mask operation, so large numbers of them can be kept
+ *  and compared cheaply.
+ */
+public final class CompactNetwork {
+
+    private final long squares;   //one bit per square on the network (see Board.square())
+    private final byte[] path;    //squares of the network in order, from the start piece
+
+    /**
+    * Constructs a network from the first length squares of a path, such as one passed to a
+    * NetworkVisitor.  The squares are copied.
+    *
+    * @param path The squares of the network in order
+    * @param length The number of squares to use
+    */
+    public CompactNetwork(int[] path, int length) {
+        long mask = 0;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            mask |= 1L << path[i];
+            bytes[i] = (byte) path[i];
+        }
+        if (Long.bitCount(mask) != length) {
+            throw new IllegalArgumentException("A network cannot visit a square twice");
+        }
+        squares = mask;
+        this.path = bytes;
+    }
+
+    /**
+    * Constructs a compact copy of a Network
+    *
+    * @param network The network to copy
+    * @return The compact network
+    */
+    public static CompactNetwork from(Network network) {
+        DList coordinates = network.getCoorList();
+        int[] path = new int[coordinates.length()];
+        int i = 0;
+        DListNode node = coordinates.front();
+        while (node != null) {
+            Coordinate c = (Coordinate) node.item;
+            path[i++] = Board.square(c.getX(), c.getY());
+            node = coordinates.next(node);
+        }
+        return new CompactNetwork(path, path.length);
+    }
+
+    /**
+    * Returns a Network with the same coordinates
+    *
+    * @return A new, mutable Network
+    */
+    public Network toNetwork() {
+        Network n = new Network();
+        for (int i = 0; i < path.length; i++) {
+            n.addToEnd(new Coordinate(Board.squareX(path[i]), Board.squareY(path[i])));
+        }
+        return n;
+    }
+
+    /**
+    * Returns the number of pieces in the network
+    */
+    public int length() {
+        return path.length;
+    }
+
+    /**
+    * Returns the square of the i-th piece of the network
+    *
+    * @param i The position in the network, from 0 to length() - 1
+    * @return The square number
+    */
+    public int square(int i) {
+        return path[i];
+    }
+
+    /**
+    * Returns the square of the first piece of the network
+    */
+    public int first() {
+        return path[0];
+    }
+
+    /**
+    * Returns the square of the last piece of the network
+    */
+    public int last() {
+        return path[path.length - 1];
+    }
+
+    /**
+    * Returns the mask of the squares the network occupies
+    */
+    public long squares() {
+        return squares;
+    }
+
+    /**
+    * Returns whether the network passes through (x, y)
+    *
+    * @param x The x-coordinate
+    * @param y The y-coordinate
+    * @return Whether (x, y) is on the network
+    */
+    public boolean contains(int x, int y) {
+        return ((squares >>> Board.square(x, y)) & 1L) != 0;
+    }
+
+    /**
+    * Returns whether the two networks share at least one square
+    *
+    * @param other The other network
+    * @return Whether the networks intersect
+    */
+    public boolean intersects(CompactNetwork other) {
+        return (squares & other.squares) != 0;
+    }
+
+    /**
+    * Returns the number of squares the two networks share
+    *
+    * @param other The other network
+    * @return The size of the overlap
+    */
+    public int overlap(CompactNetwork other) {
+        return Long.bitCount(squares & other.squares);
+    }
+
+    /**
+    * Returns whether every square of the other network is also on this one
+    *
+    * @param other The other network
+    * @return Whether this network covers the other
+    */
+    public boolean covers(CompactNetwork other) {
+        return (other.squares & ~squares) == 0;
+    }
+
+    /**
+    * Determines if network has 6 coordinates and connects from the homerow to endrow,
+    * by the same test as Network.gameWinningNetwork()
+    *
+    * @return True or false
+    */
+    public boolean gameWinningNetwork() {
+        if (path.length < 6) {
+            return false;
+        }
+        if ((Board.squareX(first()) == 0) && (Board.squareX(last()) == 7)) {
+            return true;
+        }
+        if ((Board.squareY(first()) == 0) && (Board.squareY(last()) == 7)) {
+            return true;
+        }
+        return false;
+    }
+
+    /**
+    * Returns whether the other object is a network with the same squares in the same order
+    */
+    public boolean equals(Object o) {
+        if (!(o instanceof CompactNetwork)) {
+            return false;
+        }
+        CompactNetwork other = (CompactNetwork) o;
+        return (squares == other.squares) && java.util.Arrays.equals(path, other.path);
+    }
+
+    public int hashCode() {
+        return Long.hashCode(squares) * 31 + java.util.Arrays.hashCode(path);
+    }
+
+    /**
+    * Returns a string version of class, in the same form as Network.toString()
+    */
+    public String toString() {
+        String result = "[  ";
+        for (int i = 0; i < path.length; i++) {
+            result = result + "(" + Board.squareX(path[i]) + ", " + Board.squareY(path[i]) + ")  ";
+        }
+        return result + "]";
+    }
+}
@@ -23,88 +23,248 @@ public class NetworkFinder {
     * @return A DList where each item is a Network that starts at (x, y)
     */
     public static DList networksFromStart(int x, int y, int color, Board board) {
-        boolean[][] flags = new boolean[8][8];
-        // Initialize to false
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                flags[i][j] = false;
+        final DList networks = new DList();
+        walkNetworks(Board.square(x, y), color, board, new NetworkVisitor() {
+            public boolean visit(int[] path, int length) {
+                Network n = new Network();
+                for (int i = 0; i < length; i++) {
+                    n.addToEnd(new Coordinate(Board.squareX(path[i]), Board.squareY(path[i])));
+                }
+                networks.insertBack(n);
+                return true;
             }
-        }
-        return networksFromStart(x, y, color, board, flags, Direction.NONE);
+        }, true);
+        return networks;
     }
-    
-    /** A helper method with additional arguments that help with recursion.
+
+    /**
+    * visitNetworksFromStart passes each Network that originates from the given coordinate (x,y) to
+    * the visitor, in the same deepest possible form as networksFromStart(), without building them.
+    * Networks are found depth-first, following connections in the order of Board.connections(),
+    * and the visitor can stop the search early by returning false.
+    * This method assumes that there is a piece of the given color at point (x,y) in the given board
     *
     * @param x the x-coordinate
     * @param y the y-coordinate
-    * @param p the Player whose pieces we check for the network
+    * @param color The color of the pieces to check
     * @param board the current game state
-    * @param visited An array that represented which pieces have been visited previously
-    * @pararm prevDirec The direction that was travelled to reach the current location
-    * @return A DList where each item is a Network that starts at (x, y)
+    * @param visitor Receives each network
+    * @return False if the visitor stopped the search, true otherwise
     */
-    private static DList networksFromStart(int x, int y, int color, Board board, boolean[][] visited, Direction prevDirec) {
-        visited[x][y] = true;
-        DList next = board.connections(color, x, y);
-        DList networks = new DList();
-        DListNode node = next.front();
-        while (node != null) {
-            Coordinate xy = (Coordinate) node.item;
-            Direction nextDirec = directionTo(x, y, xy.x, xy.y);
-            // For each coordinate we want to check, compute subnetworks starting from that point
-            if (!visited[xy.x][xy.y] && (nextDirec != prevDirec)) {
-                DList networksFromNext = networksFromStart(xy.x, xy.y, color, board, visited, nextDirec);
-                DListNode networkNode = networksFromNext.front();
-                // Adding networks
-                while (networkNode != null) {
-                    Network n = (Network) networkNode.item;
-                    n.addToStart(new Coordinate(x, y));
-                    networks.insertFront(n);
-                    networkNode = networksFromNext.next(networkNode);
-                }
+    public static boolean visitNetworksFromStart(int x, int y, int color, Board board, NetworkVisitor visitor) {
+        return walkNetworks(Board.square(x, y), color, board, visitor, false);
+    }
+
+    // Starts a depth-first walk with a path stack of one entry per square.  When alternate is
+    // true, the connections of the start and of every other square after it are followed in
+    // reverse ray order, which reproduces the order networksFromStart() has always returned.
+    private static boolean walkNetworks(int square, int color, Board board, NetworkVisitor visitor, boolean alternate) {
+        int[] path = new int[64];
+        path[0] = square;
+        return walkNetworks(path, 1, 1L << square, -1, color, board, visitor, !alternate, alternate);
+    }
+
+    /** A helper method with additional arguments that help with recursion.
+    *
+    * @param path The squares of the current path
+    * @param length The number of squares on the path
+    * @param visited Mask of the squares on the path
+    * @param prevRay The ray travelled to reach the last square, or -1 at the start
+    * @param color The color of the pieces to check
+    * @param board the current game state
+    * @param visitor Receives each network
+    * @param forward Whether to follow connections in ray order at this level
+    * @param alternate Whether to reverse the order at each level down
+    * @return False if the visitor stopped the search, true otherwise
+    */
+    private static boolean walkNetworks(int[] path, int length, long visited, int prevRay, int color, Board board,
+                                        NetworkVisitor visitor, boolean forward, boolean alternate) {
+        int square = path[length - 1];
+        boolean extended = false;
+        for (int i = 0; i < Board.NUM_RAYS; i++) {
+            int d = forward ? i : Board.NUM_RAYS - 1 - i;
+            if (d == prevRay) {
+                continue;
+            }
+            int next = board.connectionTo(color, square, d);
+            if ((next < 0) || (((visited >>> next) & 1L) != 0)) {
+                continue;
+            }
+            extended = true;
+            path[length] = next;
+            if (!walkNetworks(path, length + 1, visited | (1L << next), d, color, board, visitor,
+                              forward != alternate, alternate)) {
+                return false;
             }
-            node = next.next(node);
         }
-        // If no subnetworks, then this is a dead-end. Add a network containing just itself
-        if (networks.isEmpty()) {
-            Network n = new Network();
-            n.addToStart(new Coordinate(x,y));
-            networks.insertFront(n);
+        // If no subnetworks, then this is a dead-end, and the path so far is a network
+        if (!extended) {
+            return visitor.visit(path, length);
         }
-        visited[x][y] = false;
-        return networks;
+        return true;
+    }
+
+    /**
+    * hasWinningNetwork returns whether the given color has a game winning network on the board:
+    * at least 6 pieces running from its start goal line to its end goal line, never passing
+    * straight through a piece and never visiting a piece twice.
+    * The search stops at the first such network and allocates nothing.
+    *
+    * @param color The color of the pieces to check
+    * @param board the current game state
+    * @return Whether a winning network exists
+    */
+    public static boolean hasWinningNetwork(int color, Board board) {
+        long pieces = board.pieces(color);
+        long start = pieces & startGoalLine(color);
+        long end = pieces & endGoalLine(color);
+        if ((start == 0) || (end == 0) || (Long.bitCount(pieces) < 6)) {
+            return false;
+        }
+        if ((reachable(color, board, start) & end) == 0) {
+            return false;
+        }
+        while (start != 0) {
+            int sq = Long.numberOfTrailingZeros(start);
+            start &= start - 1;
+            if (winningPathFrom(color, board, sq, -1, 1L << sq, 1, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+    * Returns the squares of the start goal line for the given color: the top row for black
+    * and the left column for white.
+    *
+    * @param color The color of the player
+    * @return Mask of the start goal line, corners excluded
+    */
+    public static long startGoalLine(int color) {
+        if (color == Board.BLACK) {
+            return Board.TOP_HOME_ROW & ~Board.CORNERS;
+        }
+        return Board.LEFT_HOME_ROW & ~Board.CORNERS;
+    }
+
+    /**
+    * Returns the squares of the end goal line for the given color: the bottom row for black
+    * and the right column for white.
+    *
+    * @param color The color of the player
+    * @return Mask of the end goal line, corners excluded
+    */
+    public static long endGoalLine(int color) {
+        if (color == Board.BLACK) {
+            return Board.BOTTOM_HOME_ROW & ~Board.CORNERS;
+        }
+        return Board.RIGHT_HOME_ROW & ~Board.CORNERS;
+    }
+
+    /**
+    * Returns whether any piece on the start goal line of the given color is connected, through
+    * any chain of connections, to a piece on its end goal line. This ignores the turning and
+    * length rules, so it is necessary but not sufficient for a winning network.
+    *
+    * @param color The color of the pieces to check
+    * @param board the current game state
+    * @return Whether the two goal lines are connected
+    */
+    public static boolean goalLinesConnected(int color, Board board) {
+        long pieces = board.pieces(color);
+        long start = pieces & startGoalLine(color);
+        long end = pieces & endGoalLine(color);
+        if ((start == 0) || (end == 0)) {
+            return false;
+        }
+        return (reachable(color, board, start) & end) != 0;
+    }
+
+    /**
+    * Returns the empty squares where one more piece of the given color would be connected to
+    * the color's start goal line: the empty squares of that line, and every empty square seen
+    * by a piece connected to it.  Adding a piece elsewhere cannot complete a network.
+    *
+    * @param color The color of the pieces
+    * @param board the current game state
+    * @return Mask of the squares
+    */
+    public static long extensionSquares(int color, Board board) {
+        long start = startGoalLine(color);
+        long squares = start & ~board.occupied();
+        long connected = board.pieces(color) & start;
+        if (connected == 0) {
+            return squares;
+        }
+        connected = reachable(color, board, connected);
+        while (connected != 0) {
+            int sq = Long.numberOfTrailingZeros(connected);
+            connected &= connected - 1;
+            squares |= board.sightSquares(sq);
+        }
+        return squares;
+    }
+
+    /**
+    * Returns every piece reachable from the given pieces through connections, ignoring the
+    * turning and length rules. Used to reject boards cheaply before the full search.
+    *
+    * @param color The color of the pieces
+    * @param board the current game state
+    * @param from Mask of the pieces to start from
+    * @return Mask of reachable pieces, including from
+    */
+    static long reachable(int color, Board board, long from) {
+        long reached = from;
+        long frontier = from;
+        while (frontier != 0) {
+            int sq = Long.numberOfTrailingZeros(frontier);
+            frontier &= frontier - 1;
+            for (int d = 0; d < Board.NUM_RAYS; d++) {
+                int next = board.connectionTo(color, sq, d);
+                if ((next >= 0) && (((reached >>> next) & 1L) == 0)) {
+                    reached |= 1L << next;
+                    frontier |= 1L << next;
+                }
+            }
+        }
+        return reached;
     }
-    
+
     /**
-    * Returns the direction of the path from (x1, y1) to (x2, y2)
-    * Assumes that the two points lie on a straight line, and this straight line is one of the 8 directions.
-    * 
-    * @param x1, The first x coordinate
-    * @param y1, The first ycoordinate
-    * @param x2, The second x coordinate
-    * @param y2, The second y coordinate
-    * @return One of the possible Directions
+    * Depth-first helper for hasWinningNetwork.
+    *
+    * @param color The color of the pieces
+    * @param board the current game state
+    * @param sq The square at the end of the current path
+    * @param prevRay The ray travelled to reach sq, or -1 at the start
+    * @param visited Mask of the squares on the current path
+    * @param length Number of pieces on the current path
+    * @param end Mask of pieces on the end goal line
+    * @return Whether the path can be extended into a winning network
     */
-    private static Direction directionTo(int x1, int y1, int x2, int y2) {
-        if ((y2 < y1) && (x2 > x1))
-            return Direction.NORTHEAST;
-        if ((y2 > y1) && (x2 > x1))
-            return Direction.SOUTHEAST;
-        if ((y2 > y1) && (x2 < x1))
-            return Direction.SOUTHWEST;
-        if ((y2 < y1) && (x2 < x1))
-            return Direction.NORTHWEST;
-        if (y2 < y1)
-            return Direction.NORTH;
-        if (x2 > x1)
-            return Direction.EAST;
-        if (y2 > y1)
-            return Direction.SOUTH;
-        if (x2 < x1)
-            return Direction.WEST;
-        return Direction.NONE;
+    private static boolean winningPathFrom(int color, Board board, int sq, int prevRay, long visited, int length, long end) {
+        for (int d = 0; d < Board.NUM_RAYS; d++) {
+            if (d == prevRay) {
+                continue;
+            }
+            int next = board.connectionTo(color, sq, d);
+            if ((next < 0) || (((visited >>> next) & 1L) != 0)) {
+                continue;
+            }
+            if (((end >>> next) & 1L) != 0) {
+                // Pieces on the end goal line have no connections, so the path stops here
+                if (length + 1 >= 6) {
+                    return true;
+                }
+            } else if (winningPathFrom(color, board, next, d, visited | (1L << next), length + 1, end)) {
+                return true;
+            }
+        }
+        return false;
     }
-    
+
     // Test code, can be ignored
     public static void main(String[] args) {
         Board testBoard = new Board();
@@ -146,5 +306,30 @@ public class NetworkFinder {
             System.out.println("Is a game winning network: " + ((Network) n.item).gameWinningNetwork());
             n = networks.next(n);
         }
+        System.out.println("\nFirst winning network from (0,4)");
+        visitNetworksFromStart(0, 4, Board.WHITE, testBoard, new NetworkVisitor() {
+            public boolean visit(int[] path, int length) {
+                if ((length < 6) || (Board.squareX(path[length - 1]) != 7)) {
+                    return true;
+                }
+                for (int i = 0; i < length; i++) {
+                    System.out.print("(" + Board.squareX(path[i]) + ", " + Board.squareY(path[i]) + ") ");
+                }
+                System.out.println();
+                return false;
+            }
+        });
+        System.out.println("\nCompact networks from (0,4) and their overlap with the first one");
+        DList whiteNetworks = networksFromStart(0, 4, Board.WHITE, testBoard);
+        CompactNetwork firstNetwork = CompactNetwork.from((Network) whiteNetworks.front().item);
+        n = whiteNetworks.front();
+        while (n != null) {
+            CompactNetwork c = CompactNetwork.from((Network) n.item);
+            System.out.println(c + " overlap " + c.overlap(firstNetwork) +
+                               ", same as Network: " + c.toString().equals(n.item.toString()));
+            n = whiteNetworks.next(n);
+        }
+        System.out.println("\nWhite has a winning network: " + hasWinningNetwork(Board.WHITE, testBoard));
+        System.out.println("Black has a winning network: " + hasWinningNetwork(Board.BLACK, testBoard));
     }
 }
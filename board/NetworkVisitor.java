@@ -0,0 +1,19 @@
+/* NetworkVisitor.java */
+
+package board;
+
+/**
+* Receives the networks found by NetworkFinder.visitNetworksFromStart(), one at a time.
+*/
+public interface NetworkVisitor {
+
+    /**
+    * Called once for each network. The path array is reused for the next network, so it must be
+    * copied if it is needed after this call returns.
+    *
+    * @param path The squares of the network in order, from the start piece (see Board.square())
+    * @param length The number of squares in the network; path holds them in indices 0 to length - 1
+    * @return True to continue with the next network, false to stop the search
+    */
+    boolean visit(int[] path, int length);
+}
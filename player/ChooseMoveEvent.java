@@ -0,0 +1,52 @@
+/* ChooseMoveEvent.java */
+
+package player;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+* Flight Recorder event for one call to MachinePlayer.chooseMove(), lasting from the call to
+* the return of the move.  Off unless a recording turns it on, for example with
+* -XX:StartFlightRecording:+network.ChooseMove#enabled=true
+*/
+@Name("network.ChooseMove")
+@Label("Choose Move")
+@Category({ "Network", "Search" })
+@Description("A move chosen by MachinePlayer, with the position it was chosen in")
+@Enabled(false)
+@StackTrace(false)
+final class ChooseMoveEvent extends Event {
+
+    @Label("Color")
+    String color;
+
+    @Label("Move")
+    String move;
+
+    @Label("Source")
+    @Description("search, ponder, book or solver")
+    String source;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Score")
+    @Description("Score of the move from white's point of view")
+    int score;
+
+    @Label("Position Key")
+    @Description("Board.hashKey() of the position, the same in every network event")
+    long positionKey;
+
+    @Label("Board")
+    String board;
+}
@@ -0,0 +1,47 @@
+/* IterationEvent.java */
+
+package player;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+* Flight Recorder event for one iteration of a chooseMove() search: the search of the root to
+* one depth, including any re-search outside the aspiration window.  Off by default, like
+* ChooseMoveEvent.
+*/
+@Name("network.Iteration")
+@Label("Search Iteration")
+@Category({ "Network", "Search" })
+@Description("One depth of MachinePlayer's iterative deepening")
+@Enabled(false)
+@StackTrace(false)
+final class IterationEvent extends Event {
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Completed")
+    @Description("False if the time ran out during the iteration")
+    boolean completed;
+
+    @Label("Best Move")
+    String move;
+
+    @Label("Score")
+    @Description("Score from white's point of view")
+    int score;
+
+    @Label("Nodes")
+    @Description("Nodes searched so far in the move, by the main search thread")
+    long nodes;
+
+    @Label("Position Key")
+    @Description("Board.hashKey() of the position, the same in every network event")
+    long positionKey;
+}
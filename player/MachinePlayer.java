@@ -4,6 +4,8 @@ package player;
 
 import list.*;
 import board.*;
+import java.util.concurrent.*;
+import jdk.jfr.FlightRecorder;
 
 /**
  *  An implementation of an automatic Network player.  Keeps track of moves
@@ -19,6 +21,71 @@ public class MachinePlayer extends Player {
   private int maxSearchDepth; // The maximum search depth
   private final int MAX_SCORE = 1000; // The max score given to a board
   private final int MIN_SCORE = -1000; // The min score given to a board
+  private TranspositionTable table; // Search results kept between moves, shared with helpers and the ponderer
+  private SearchStats stats = new SearchStats(); // Counters of the running search, kept by this thread
+  private SearchStats moveStats = new SearchStats(); // Counters of the last chooseMove()
+  private int depthReached = 0; // The depth of the last completed search
+  private int rootMove = MoveEncoding.NONE; // Best move of the previous iteration, tried first at the root
+  private long deadline = 0; // System.nanoTime() at which a timed search stops, or 0 for no limit
+  private boolean timeUp = false; // Whether the current timed search has passed its deadline
+  private int uncheckedNodes = 0; // Positions searched since the clock and stop flag were last read
+  private final static int MAX_ITERATIONS = 32; // Deepest iteration a timed search will start
+
+  // Move ordering.  Buffers are indexed by ply and reused by every search.
+  private final static int MAX_PLY = 64; // Deepest ply the search can reach
+  private int[][] plyMoves = new int[MAX_PLY][MoveGenerator.MAX_MOVES]; // Ordered move codes at each ply
+  private int[][] plyScores = new int[MAX_PLY][MoveGenerator.MAX_MOVES]; // Ordering score of each of those moves
+  private int[][] killers = new int[MAX_PLY][2]; // Two most recent quiet cutoff moves per ply
+  private int[][] history = new int[2][1 << 14]; // Cutoff credit per color per move code
+
+  // Parallel search.  Helpers are private copies of this player that share its
+  // transposition table and search the same root until the main search finishes.
+  private MachinePlayer[] helpers = new MachinePlayer[0]; // One per extra search thread
+  private Future<?>[] helperTasks = new Future<?>[0]; // Running helper searches
+  private ExecutorService helperPool; // Threads for the helpers, or null when single-threaded
+  private volatile boolean stopRequested = false; // Set to stop a helper's search
+
+  // Pondering.  After chooseMove() returns, a private copy of this player that shares its
+  // transposition table searches the position after the expected reply, on its own board,
+  // until the opponent's move arrives.
+  private boolean pondering = false; // Whether to search on the opponent's time
+  private MachinePlayer ponderer; // Searches the expected position, or null if pondering was never on
+  private ExecutorService ponderPool; // The thread for the ponderer, or null
+  private Future<?> ponderTask; // The running ponder search, or null
+  private long ponderKey = 0; // Key of the position the ponderer searched, with this player to move
+  private int ponderHits = 0; // Moves chosen starting from a ponder search
+
+  // Principal variation search
+  private boolean principalVariationSearch = true; // Whether later siblings get null-window searches
+  private int aspirationWindow = 5; // Half-width of the root window around the previous score, or 0
+  private int[][] pv = new int[MAX_PLY][MAX_PLY]; // pv[ply] holds the best line found from ply onwards
+  private int[] pvLength = new int[MAX_PLY]; // pv[ply] ends before index pvLength[ply]
+  private int[] lastPv = new int[0]; // Principal variation of the last completed search
+  private int lastScore = 0; // Score of the last completed search
+  private int expectedMove = MoveEncoding.NONE; // Our next move on lastPv if the opponent played its reply, or NONE
+  private int expectedDepth = 0; // Depth to which the last search looked past expectedMove
+  private int searchedMove = MoveEncoding.NONE; // Move chosen at the root by the last searchGameTree()
+  private OpeningBook book; // Consulted before searching, or null
+
+  // Threat quiescence: past the nominal depth, only moves that make or stop a network threat are searched
+  private int quiescencePlies = 0; // Most plies searched past the nominal depth, or 0 for none
+  private int[] threatMoves = new int[MoveGenerator.MAX_MOVES]; // Move buffer for the threat detector
+
+  // Selective search
+  private final static int LMR_MIN_DEPTH = 3; // Least remaining depth at which late moves are reduced
+  private final static int LMR_FULL_MOVES = 3; // Moves searched at full depth before reductions start
+  private boolean lateMoveReductions = false; // Whether late quiet moves are searched one ply shallower first
+  private int futilityMargin = 0; // Most a quiet move can gain at a frontier node, or 0 for no futility pruning
+
+  // Forced-win solver, tried after a search whose score favours this player without proving a win
+  // Least score, from this player's side, that tries the solver.  Scores count lines of sight
+  // from both ends, so 4 is two more connections than the opponent.  In self-play at depth 2
+  // with 4 extra plies, the solver proved about a quarter of positions scoring 4 and over half
+  // of those scoring 6, but under 15% of those scoring 0 to 3, where many attempts ran out of
+  // nodes.
+  private final static int SOLVER_THRESHOLD = 4;
+  private ProofNumberSearch solver; // Or null when the solver is off
+  private int solverPlies = 0; // Plies the solver looks beyond the search depth
   
   /** Creates a machine player with the given color.  Color is either 0 (black)
   * or 1 (white).  (White has the first move.) This defaults to a search depth of 3
@@ -45,6 +112,16 @@ public class MachinePlayer extends Player {
     }
     maxSearchDepth = searchDepth;
     myBoard = new Board();
+    table = new TranspositionTable(1 << 18);
+  }
+
+  // Creates a search helper for the given player that shares its transposition table
+  private MachinePlayer(MachinePlayer main) {
+    playerColor = main.playerColor;
+    opponentColor = main.opponentColor;
+    maxSearchDepth = main.maxSearchDepth;
+    myBoard = new Board();
+    table = main.table;
   }
 
   /** Chooses and returns a new move by "this" player.  Internally records the move (updates
@@ -52,17 +129,679 @@ public class MachinePlayer extends Player {
    * @return the chosen move
    */
   public Move chooseMove() {
-     Move m = searchGameTree(playerColor, Integer.MIN_VALUE, Integer.MAX_VALUE, maxSearchDepth).move;
+     stopPondering();
+     long start = System.nanoTime();
+     ChooseMoveEvent event = beginMoveEvent();
+     Move bookMove = bookMove();
+     if (bookMove != null) {
+        moveChosen(event, bookMove, "book", start);
+        startPondering();
+        return bookMove;
+     }
+     if (pondered(maxSearchDepth)) {
+        // The ponder search already reached the depth
+        Move m = MoveEncoding.decode(rootMove);
+        forceMove(m);
+        moveChosen(event, m, "ponder", start);
+        startPondering();
+        return m;
+     }
+     stats.reset();
+     // Try the move the last search expected first; the table still holds its subtree
+     rootMove = expectedMove;
+     expectedMove = MoveEncoding.NONE;
+     resetOrdering();
+     table.newSearch();
+     startHelpers(maxSearchDepth);
+     IterationEvent iteration = beginIteration();
+     int score = searchGameTree(playerColor, Integer.MIN_VALUE, Integer.MAX_VALUE, maxSearchDepth, 0);
+     endIteration(iteration, maxSearchDepth, score);
+     stopHelpers();
+     Move m = MoveEncoding.decode(searchedMove);
+     savePrincipalVariation(score);
+     depthReached = maxSearchDepth;
+     Move solved = solvedMove(score, maxSearchDepth);
+     if (solved != null) {
+        m = solved;
+     }
      forceMove(m);
+     moveChosen(event, m, (solved != null) ? "solver" : "search", start);
+     startPondering();
      return m;
   } 
+
+  /** Chooses a move by iterative deepening: searches to depth 1, 2, 3... until the time
+   *  budget runs out, and plays the best move of the deepest completed iteration.  Depth 1
+   *  always completes, however small the budget.  If the opponent played the reply the last
+   *  search expected, the search starts at the depth that search reached past it instead, and
+   *  plays the move it planned if even that iteration runs out of time.  Internally records
+   *  the move as a move by "this" player.
+   * @param timeBudgetMillis The wall-clock time allowed for the search, in milliseconds
+   * @return the chosen move
+   */
+  public Move chooseMove(long timeBudgetMillis) {
+     stopPondering();
+     long start = System.nanoTime();
+     ChooseMoveEvent event = beginMoveEvent();
+     Move bookMove = bookMove();
+     if (bookMove != null) {
+        moveChosen(event, bookMove, "book", start);
+        startPondering();
+        return bookMove;
+     }
+     int best = MoveEncoding.NONE;
+     int firstDepth = 1;
+     stats.reset();
+     boolean pondered = pondered(1);
+     boolean searched = pondered; // Whether lastPv, lastScore and depthReached are for this position
+     if (pondered) {
+        // Carry on from the deepest iteration the ponder search completed
+        best = rootMove;
+        firstDepth = depthReached + 1;
+        if ((lastScore >= MAX_SCORE) || (lastScore <= MIN_SCORE)) {
+            firstDepth = MAX_ITERATIONS + 1;
+        }
+     } else if (expectedMove != MoveEncoding.NONE) {
+        // The opponent played the expected reply, so the table holds the rest of the last
+        // search's tree: start from the depth it reached there, around the same score
+        best = expectedMove;
+        rootMove = expectedMove;
+        firstDepth = Math.max(1, expectedDepth);
+     } else {
+        rootMove = MoveEncoding.NONE;
+     }
+     expectedMove = MoveEncoding.NONE;
+     resetOrdering();
+     table.newSearch();
+     deadline = start + timeBudgetMillis * 1000000L;
+     timeUp = false;
+     if (firstDepth == 1) {
+        // Depth 1 always completes
+        deadline = 0;
+     }
+     startHelpers(MAX_ITERATIONS);
+     for (int depth = firstDepth; depth <= MAX_ITERATIONS; depth++) {
+        IterationEvent iteration = beginIteration();
+        int score;
+        if ((depth > 1) && (aspirationWindow > 0) && (lastScore < MAX_SCORE) && (lastScore > MIN_SCORE)) {
+            // Search a narrow window around the previous score, and widen it on failure
+            int low = lastScore - aspirationWindow;
+            int high = lastScore + aspirationWindow;
+            score = searchGameTree(playerColor, low, high, depth, 0);
+            if (!timeUp && ((score <= low) || (score >= high))) {
+                score = searchGameTree(playerColor, Integer.MIN_VALUE, Integer.MAX_VALUE, depth, 0);
+            }
+        } else {
+            score = searchGameTree(playerColor, Integer.MIN_VALUE, Integer.MAX_VALUE, depth, 0);
+        }
+        endIteration(iteration, depth, score);
+        if (timeUp) {
+            break;
+        }
+        best = searchedMove;
+        rootMove = best;
+        savePrincipalVariation(score);
+        depthReached = depth;
+        searched = true;
+        // A forced win or loss will not change with more depth
+        if ((score >= MAX_SCORE) || (score <= MIN_SCORE) || (best == MoveEncoding.NONE)) {
+            break;
+        }
+        deadline = start + timeBudgetMillis * 1000000L;
+        if (System.nanoTime() >= deadline) {
+            break;
+        }
+     }
+     stopHelpers();
+     deadline = 0;
+     timeUp = false;
+     if (!searched) {
+        // The first iteration after the expected reply ran out of time, so all that is known
+        // is the move the last search planned
+        lastPv = new int[] { best };
+        lastScore = 0;
+        depthReached = 0;
+     }
+     Move m = MoveEncoding.decode(best);
+     Move solved = solvedMove(lastScore, depthReached);
+     if (solved != null) {
+        m = solved;
+     }
+     forceMove(m);
+     moveChosen(event, m, (solved != null) ? "solver" : (pondered ? "ponder" : "search"), start);
+     startPondering();
+     return m;
+  }
+
+  /**
+  * Sets the opening book that chooseMove() consults before searching.  A position found in the
+  * book is played without a search.
+  *
+  * @param book The book, or null to always search
+  */
+  public void setOpeningBook(OpeningBook book) {
+    this.book = book;
+  }
+
+  // Plays and returns the book move for the current position, or returns null if there is none
+  private Move bookMove() {
+    if (book == null) {
+        return null;
+    }
+    int index = book.find(myBoard.hashKey(playerColor));
+    if (index < 0) {
+        return null;
+    }
+    Move m = MoveEncoding.decode(book.move(index));
+    // Guards against a key collision with a position the book was not built for
+    if (!forceMove(m)) {
+        return null;
+    }
+    stats.reset();
+    depthReached = book.depth(index);
+    lastScore = book.score(index);
+    lastPv = new int[] { book.move(index) };
+    return m;
+  }
+
+  /**
+  * Turns on the forced-win solver.  After a search whose score favours this player but does not
+  * prove a win, a proof-number search looks for a forced network up to the given number of
+  * plies beyond the search depth, and its first move is played if one is found.
+  *
+  * @param extraPlies The plies beyond the search depth, or 0 to turn the solver off
+  * @param nodeLimit The most nodes the solver may expand per move
+  */
+  public void setForcedWinSolver(int extraPlies, long nodeLimit) {
+    solverPlies = extraPlies;
+    solver = (extraPlies > 0) ? new ProofNumberSearch(1 << 16, nodeLimit) : null;
+  }
+
+  // Returns the first move of a forced win proven by the solver, or null.  On success the
+  // principal variation becomes the winning line.
+  private Move solvedMove(int score, int depth) {
+    int ownScore = (playerColor == Board.WHITE) ? score : -score;
+    if ((solver == null) || (ownScore < SOLVER_THRESHOLD) || (ownScore >= MAX_SCORE)) {
+        return null;
+    }
+    Move[] line = solver.solve(myBoard, playerColor, playerColor, depth + solverPlies);
+    if ((line == null) || (line.length == 0)) {
+        return null;
+    }
+    lastScore = winScore(playerColor, 0);
+    lastPv = new int[line.length];
+    for (int i = 0; i < line.length; i++) {
+        lastPv[i] = MoveEncoding.encode(line[i]);
+    }
+    return line[0];
+  }
+
+  /**
+  * Sets how many plies past the nominal depth the search follows network threats.  Only moves
+  * that create a threat to complete a network next move, or stop the opponent's threat, are
+  * searched there, so the cost stays small; the cap bounds it in the worst case.
+  *
+  * @param plies The most extra plies, or 0 to score every position at the nominal depth (the
+  * default)
+  */
+  public void setQuiescencePlies(int plies) {
+    quiescencePlies = plies;
+  }
+
+  /**
+  * Turns pondering on or off.  When on, chooseMove() predicts the opponent's reply from its
+  * principal variation before returning, and a background thread searches the position after
+  * that reply on a copy of the board.  opponentMove() stops the background search before it
+  * touches the board.  If the opponent played the predicted move, the next chooseMove() starts
+  * from what the background search found; otherwise that work only survives in the shared
+  * transposition table.
+  *
+  * @param enabled Whether to ponder
+  */
+  public void setPondering(boolean enabled) {
+    stopPondering();
+    pondering = enabled;
+    if (enabled && (ponderer == null)) {
+        ponderer = new MachinePlayer(this);
+        ponderPool = Executors.newSingleThreadExecutor(daemonThreads("MachinePlayer ponder"));
+    }
+  }
+
+  /**
+  * Stops the background threads of pondering and of the parallel search.  Call it when the
+  * game is over or the player is no longer needed.  The player can still be used afterwards,
+  * searching on one thread without pondering until they are turned on again.
+  */
+  public void close() {
+    setPondering(false);
+    if (ponderPool != null) {
+        ponderPool.shutdownNow();
+        ponderPool = null;
+        ponderer = null;
+    }
+    setSearchThreads(1);
+  }
+
+  /**
+  * Returns the number of moves chosen starting from a ponder search
+  *
+  * @return The number of ponder hits
+  */
+  public int ponderHits() {
+    return ponderHits;
+  }
+
+  // Starts the ponderer on the position after the opponent's expected reply
+  private void startPondering() {
+    ponderKey = 0;
+    if (!pondering || (lastPv.length < 2) || hasWonGame(playerColor) || hasWonGame(opponentColor)) {
+        return;
+    }
+    ponderer.myBoard = new Board(myBoard);
+    ponderer.moves = moves;
+    ponderer.opponentMoves = opponentMoves;
+    ponderer.stats.reset();
+    copySearchSettings(ponderer);
+    ponderer.stopRequested = false;
+    ponderer.resetOrdering();
+    table.newSearch();
+    ponderer.makeMove(opponentColor, lastPv[1]);
+    if (ponderer.hasWonGame(opponentColor)) {
+        return;
+    }
+    ponderKey = ponderer.myBoard.hashKey(playerColor);
+    ponderTask = ponderPool.submit(new Runnable() {
+        public void run() {
+            ponderer.ponderSearch();
+        }
+    });
+  }
+
+  // Stops the ponderer, if it is running, and waits for it to finish
+  private void stopPondering() {
+    if (ponderTask == null) {
+        return;
+    }
+    ponderer.stopRequested = true;
+    try {
+        ponderTask.get();
+    } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+    }
+    ponderTask = null;
+  }
+
+  // Iterative deepening run by the ponderer until a stop request, keeping the results of the
+  // deepest completed iteration
+  private void ponderSearch() {
+    timeUp = false;
+    deadline = 0;
+    depthReached = 0;
+    rootMove = MoveEncoding.NONE;
+    for (int depth = 1; depth <= MAX_ITERATIONS; depth++) {
+        int score = searchGameTree(playerColor, Integer.MIN_VALUE, Integer.MAX_VALUE, depth, 0);
+        if (timeUp) {
+            break;
+        }
+        rootMove = searchedMove;
+        depthReached = depth;
+        savePrincipalVariation(score);
+        if ((score >= MAX_SCORE) || (score <= MIN_SCORE) || (rootMove == MoveEncoding.NONE)) {
+            break;
+        }
+    }
+    timeUp = false;
+  }
+
+  // On a ponder hit whose search completed at least the given depth, takes over its move,
+  // score, line and depth and returns true
+  private boolean pondered(int depth) {
+    if ((ponderKey == 0) || (ponderKey != myBoard.hashKey(playerColor))) {
+        return false;
+    }
+    ponderKey = 0;
+    if ((ponderer.depthReached < depth) || (ponderer.rootMove == MoveEncoding.NONE)) {
+        return false;
+    }
+    ponderHits++;
+    // The move costs only the ponder search's nodes
+    stats.copyFrom(ponderer.stats);
+    rootMove = ponderer.rootMove;
+    depthReached = ponderer.depthReached;
+    lastScore = ponderer.lastScore;
+    lastPv = ponderer.lastPv;
+    return true;
+  }
+
+  /**
+  * Turns late move reductions on or off.  When on, quiet moves ordered after the first few are
+  * first searched one ply shallower with a null window, and searched again at full depth only
+  * if they beat the window.  They are off by default: in self-play they searched fewer nodes
+  * but did not win more games.
+  *
+  * @param enabled Whether to reduce late moves
+  */
+  public void setLateMoveReductions(boolean enabled) {
+    lateMoveReductions = enabled;
+  }
+
+  /**
+  * Sets the futility margin.  At nodes one ply from the horizon searched with a null window,
+  * quiet moves are skipped when the static evaluation plus the margin cannot reach the window.
+  *
+  * @param margin The most a quiet move is assumed to change the evaluation, or 0 to turn
+  * futility pruning off (the default)
+  */
+  public void setFutilityMargin(int margin) {
+    futilityMargin = margin;
+  }
+
+  /**
+  * Turns principal variation search on or off.  When on (the default), only the first move at
+  * each node is searched with the full window; later moves get a null window and are searched
+  * again only if they beat the first.
+  *
+  * @param enabled Whether to use principal variation search
+  */
+  public void setPrincipalVariationSearch(boolean enabled) {
+    principalVariationSearch = enabled;
+  }
+
+  /**
+  * Sets the half-width of the aspiration window that chooseMove(long) places around the previous
+  * iteration's score.  A search that falls outside the window is repeated with a full window.
+  *
+  * @param width The half-width, or 0 to always search with a full window
+  */
+  public void setAspirationWindow(int width) {
+    aspirationWindow = width;
+  }
+
+  /**
+  * Returns the line of play the last call to chooseMove() expects, starting with the move it
+  * chose.  The line may be shorter than the search depth where the search ended early at a
+  * won position or a transposition table hit.
+  *
+  * @return The expected moves, alternating between this player and the opponent
+  */
+  public Move[] principalVariation() {
+    Move[] line = new Move[lastPv.length];
+    for (int i = 0; i < lastPv.length; i++) {
+        line[i] = MoveEncoding.decode(lastPv[i]);
+    }
+    return line;
+  }
+
+  // Records the root principal variation and score of a completed search
+  private void savePrincipalVariation(int score) {
+    lastScore = score;
+    lastPv = new int[pvLength[0]];
+    System.arraycopy(pv[0], 0, lastPv, 0, pvLength[0]);
+    if ((lastPv.length == 0) || (lastPv[0] != searchedMove)) {
+        // The root failed low or high, so only its move is known
+        lastPv = new int[] { searchedMove };
+    }
+  }
+
+  /**
+  * Sets the number of threads used by chooseMove().  With more than one thread, helper threads
+  * search the same position on their own board copies and share results through the
+  * transposition table; the move is still chosen by the calling thread.  A single thread
+  * (the default) gives deterministic move choice.
+  *
+  * @param threads The number of search threads, at least 1
+  */
+  public void setSearchThreads(int threads) {
+    if (helperPool != null) {
+        helperPool.shutdownNow();
+        helperPool = null;
+    }
+    helpers = new MachinePlayer[Math.max(0, threads - 1)];
+    helperTasks = new Future<?>[helpers.length];
+    for (int i = 0; i < helpers.length; i++) {
+        helpers[i] = new MachinePlayer(this);
+    }
+    if (helpers.length > 0) {
+        helperPool = Executors.newFixedThreadPool(helpers.length, daemonThreads("MachinePlayer search helper"));
+    }
+  }
+
+  // Returns a factory for daemon threads, so that searches never keep the program alive
+  private static ThreadFactory daemonThreads(final String name) {
+    return new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        }
+    };
+  }
+
+  // Copies the current game state into each helper and starts its search
+  private void startHelpers(final int depthLimit) {
+    for (int i = 0; i < helpers.length; i++) {
+        final MachinePlayer helper = helpers[i];
+        // Every other helper, starting with the first, searches one ply deeper so the threads
+        // fill the table at different depths
+        final int depthOffset = i % 2 == 0 ? 1 : 0;
+        helper.myBoard = new Board(myBoard);
+        helper.moves = moves;
+        helper.opponentMoves = opponentMoves;
+        helper.stats.reset();
+        copySearchSettings(helper);
+        helper.stopRequested = false;
+        helper.resetOrdering();
+        helperTasks[i] = helperPool.submit(new Runnable() {
+            public void run() {
+                helper.helperSearch(depthLimit + depthOffset);
+            }
+        });
+    }
+  }
+
+  // Gives a helper or the ponderer the same search settings as this player
+  private void copySearchSettings(MachinePlayer other) {
+    other.principalVariationSearch = principalVariationSearch;
+    other.quiescencePlies = quiescencePlies;
+    other.lateMoveReductions = lateMoveReductions;
+    other.futilityMargin = futilityMargin;
+  }
+
+  // Stops every helper, waits for it to finish and adds its counters to this player's
+  private void stopHelpers() {
+    for (int i = 0; i < helpers.length; i++) {
+        helpers[i].stopRequested = true;
+    }
+    for (int i = 0; i < helpers.length; i++) {
+        try {
+            helperTasks[i].get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        stats.merge(helpers[i].stats);
+    }
+  }
+
+  // Iterative deepening run by a helper thread until its depth limit or a stop request
+  private void helperSearch(int depthLimit) {
+    timeUp = false;
+    deadline = 0;
+    for (int depth = 1; depth <= depthLimit; depth++) {
+        searchGameTree(playerColor, Integer.MIN_VALUE, Integer.MAX_VALUE, depth, 0);
+        if (timeUp) {
+            break;
+        }
+    }
+    timeUp = false;
+  }
+
+  /**
+  * Sets the number of slots in the transposition table, discarding its contents.
+  * The size is rounded down to a power of two.
+  *
+  * @param slots The number of slots
+  */
+  public void setTranspositionTableSize(int slots) {
+    stopPondering();
+    table = new TranspositionTable(slots);
+    for (int i = 0; i < helpers.length; i++) {
+        helpers[i].table = table;
+    }
+    if (ponderer != null) {
+        ponderer.table = table;
+    }
+  }
+
+  /**
+  * Returns the counters of the last call to chooseMove(), summed over every search thread
+  *
+  * @return A copy of the counters
+  */
+  public SearchStats searchStats() {
+    SearchStats copy = new SearchStats();
+    copy.copyFrom(moveStats);
+    return copy;
+  }
+
+  // Keeps the counters of the move just chosen for searchStats(), and records its ChooseMoveEvent
+  private void moveChosen(ChooseMoveEvent event, Move m, String source, long start) {
+    stats.depth = depthReached;
+    stats.nanos = System.nanoTime() - start;
+    moveStats.copyFrom(stats);
+    if (event == null) {
+        return;
+    }
+    event.end();
+    if (event.shouldCommit()) {
+        event.move = m.toString();
+        event.source = source;
+        event.depth = depthReached;
+        event.nodes = stats.nodes;
+        event.score = lastScore;
+        event.commit();
+    }
+  }
+
+  // Returns whether Flight Recorder is running.  Loading an event class starts the recorder,
+  // which takes a few hundred milliseconds, so no event is created until something else has.
+  private static boolean recording() {
+    return FlightRecorder.isInitialized();
+  }
+
+  // Starts the ChooseMoveEvent of a move, noting the position if the event is being recorded.
+  // Returns null while the recorder is not running.
+  private ChooseMoveEvent beginMoveEvent() {
+    if (!recording()) {
+        return null;
+    }
+    ChooseMoveEvent event = new ChooseMoveEvent();
+    if (event.isEnabled()) {
+        event.color = colorName(playerColor);
+        event.positionKey = myBoard.hashKey();
+        event.board = myBoard.toString();
+    }
+    event.begin();
+    return event;
+  }
+
+  // Starts the IterationEvent of a search of the root, or returns null while the recorder is
+  // not running
+  private IterationEvent beginIteration() {
+    if (!recording()) {
+        return null;
+    }
+    IterationEvent iteration = new IterationEvent();
+    iteration.begin();
+    return iteration;
+  }
+
+  // Records the IterationEvent of a search of the root to the given depth
+  private void endIteration(IterationEvent iteration, int depth, int score) {
+    if (iteration == null) {
+        return;
+    }
+    iteration.end();
+    if (iteration.shouldCommit()) {
+        iteration.depth = depth;
+        iteration.completed = !timeUp;
+        if (!timeUp) {
+            iteration.move = MoveEncoding.decode(searchedMove).toString();
+            iteration.score = score;
+        }
+        iteration.nodes = stats.nodes;
+        iteration.positionKey = myBoard.hashKey();
+        iteration.commit();
+    }
+  }
+
+  // Returns "white" or "black" for a Board color
+  private static String colorName(int color) {
+    return (color == Board.WHITE) ? "white" : "black";
+  }
+
+  /**
+  * Returns the number of positions searched by the last call to chooseMove()
+  *
+  * @return The node count
+  */
+  public long nodesSearched() {
+    return moveStats.nodes();
+  }
+
+  /**
+  * Returns the number of beta cutoffs in the last call to chooseMove()
+  *
+  * @return The cutoff count
+  */
+  public long betaCutoffs() {
+    return moveStats.betaCutoffs();
+  }
+
+  /**
+  * Returns the fraction of beta cutoffs in the last call to chooseMove() that were caused by
+  * the first move searched.  Values near 1 mean the move ordering is close to ideal.
+  *
+  * @return The first-move cutoff rate, or 0 if there were no cutoffs
+  */
+  public double firstMoveCutoffRate() {
+    return moveStats.firstMoveCutoffRate();
+  }
+
+  // Returns the score of the last completed search, from white's point of view
+  int lastScore() {
+    return lastScore;
+  }
+
+  /**
+  * Returns the depth of the deepest search completed by the last call to chooseMove()
+  *
+  * @return The depth reached
+  */
+  public int depthReached() {
+    return depthReached;
+  }
   
-  // Searches the game tree, and returns what it believes is the best move for the player
+  // Searches the game tree, and returns the score of the best move for the player to move.
   // Uses alpha-beta pruning. White is the maximizing player, black is the minimizing player
-  private Best searchGameTree(int color, int alpha, int beta, int depth) {
+  // Results are cached in the transposition table; ply is the distance from the root.
+  // The best line is left in pv[ply], and at the root the chosen move in searchedMove.
+  // Allocates nothing: moves live in plyMoves[ply] and scores are plain ints.
+  private int searchGameTree(int color, int alpha, int beta, int depth, int ply) {
     // If both players have a network, then previous move created a network while unblocking another, so the current player should win
     // Small mini-hack: score a win in 1 move slightly better than a win in 3 moves
     // Depth is higher when fewer moves have been checked.
+    stats.nodes++;
+    pvLength[ply] = ply;
+    if (ply == 0) {
+        searchedMove = MoveEncoding.NONE;
+    }
+    if (outOfTime()) {
+        return 0;
+    }
     int oppositeColor;
     if (color == playerColor) {
         oppositeColor = opponentColor;
@@ -70,146 +809,473 @@ public class MachinePlayer extends Player {
         oppositeColor = playerColor;
     }
     if (hasWonGame(color)) {
-        if (color == Board.WHITE) {
-            Best b = new Best();
-            b.score = MAX_SCORE + depth;
-            return b;
-        } else {
-            Best b = new Best();
-            b.score = MIN_SCORE - depth;
-            return b;
+        if (SearchStats.DETAILED) {
+            stats.leaves++;
         }
+        return winScore(color, depth);
     } else if (hasWonGame(oppositeColor)) {
-        if (oppositeColor == Board.WHITE) {
-            Best b = new Best();
-            b.score = MAX_SCORE + depth;
-            return b;
-        } else {
-            Best b = new Best();
-            b.score = MIN_SCORE - depth;
-            return b;
+        if (SearchStats.DETAILED) {
+            stats.leaves++;
         }
+        return winScore(oppositeColor, depth);
     } 
     if (depth == 0) {
-        Best b = new Best();
-        b.score = evaluateBoard();
-        return b;
+        if (quiescencePlies == 0) {
+            if (SearchStats.DETAILED) {
+                stats.leaves++;
+            }
+            return evaluateBoard();
+        }
+        return quiesce(color, oppositeColor, alpha, beta, ply, quiescencePlies);
+    }
+    long key = myBoard.hashKey(color);
+    long entry = table.probe(key);
+    if (SearchStats.DETAILED) {
+        stats.tableProbes++;
+        if (entry != 0) {
+            stats.tableHits++;
+        }
     }
-    DList possibleMoves = allValidMoves(color);
-    DListNode curr = possibleMoves.front();
-    Best currBest = new Best();
+    int ttMove = MoveEncoding.NONE;
+    if (entry != 0) {
+        ttMove = TranspositionTable.move(entry);
+        // Never cut at the root, which must always return a playable move
+        if ((ply > 0) && (TranspositionTable.depth(entry) >= depth)) {
+            int score = scoreFromTable(TranspositionTable.score(entry), depth);
+            int bound = TranspositionTable.bound(entry);
+            if ((bound == TranspositionTable.EXACT) ||
+                ((bound == TranspositionTable.LOWER) && (score >= beta)) ||
+                ((bound == TranspositionTable.UPPER) && (score <= alpha))) {
+                return score;
+            }
+        }
+    }
+    int originalAlpha = alpha;
+    int originalBeta = beta;
+    int[] ordered = plyMoves[ply];
+    int numMoves = MoveGenerator.generate(myBoard, color, nextMoveType(color), ordered);
+    if (ply == 0) {
+        orderMoves(color, ply, numMoves, rootMove, ttMove);
+    } else {
+        orderMoves(color, ply, numMoves, ttMove, MoveEncoding.NONE);
+    }
+    int bestScore;
+    int bestMove = MoveEncoding.NONE;
     if (color == Board.WHITE) {
-        currBest.score = alpha;
+        bestScore = alpha;
     } else {
-        currBest.score = beta;
+        bestScore = beta;
+    }
+    int reply;
+    int checkedMove;
+    // Frontier nodes searched with a null window may skip quiet moves that cannot raise the
+    // score to the window however well they do
+    boolean futile = false;
+    if ((depth == 1) && (futilityMargin > 0) && (beta - alpha == 1)) {
+        if (color == Board.WHITE) {
+            futile = evaluateBoard() + futilityMargin <= alpha;
+        } else {
+            futile = evaluateBoard() - futilityMargin >= beta;
+        }
     }
-    Best reply;
-    Move checkedMove;
     // Check moves
-    while (curr != null) {
-        checkedMove = (Move) curr.item;
+    for (int i = 0; i < numMoves; i++) {
+        checkedMove = ordered[i];
+        boolean quiet = plyScores[ply][i] < KILLER_SCORE;
+        if (futile && quiet && (i > 0)) {
+            continue;
+        }
         // apply move
-        if (color == playerColor) {
-            forceMove(checkedMove);
-        } else {
-            opponentMove(checkedMove);
+        makeMove(color, checkedMove);
+        boolean reduced = false;
+        reply = 0;
+        if (lateMoveReductions && quiet && (ply > 0) && (depth >= LMR_MIN_DEPTH) && (i >= LMR_FULL_MOVES)) {
+            // Late quiet moves rarely matter: prove that with a shallower null-window search,
+            // and search at full depth only if the move beats the window after all
+            if (color == Board.WHITE) {
+                reply = searchGameTree(oppositeColor, alpha, alpha + 1, depth - 2, ply + 1);
+                reduced = timeUp || (reply <= alpha);
+            } else {
+                reply = searchGameTree(oppositeColor, beta - 1, beta, depth - 2, ply + 1);
+                reduced = timeUp || (reply >= beta);
+            }
+        }
+        if (!reduced) {
+            if ((i == 0) || !principalVariationSearch) {
+                reply = searchGameTree(oppositeColor, alpha, beta, depth - 1, ply + 1);
+            } else if (color == Board.WHITE) {
+                // Null window: only find out whether this move beats alpha
+                reply = searchGameTree(oppositeColor, alpha, alpha + 1, depth - 1, ply + 1);
+                if (!timeUp && (reply > alpha) && (reply < beta)) {
+                    reply = searchGameTree(oppositeColor, alpha, beta, depth - 1, ply + 1);
+                }
+            } else {
+                reply = searchGameTree(oppositeColor, beta - 1, beta, depth - 1, ply + 1);
+                if (!timeUp && (reply < beta) && (reply > alpha)) {
+                    reply = searchGameTree(oppositeColor, alpha, beta, depth - 1, ply + 1);
+                }
+            }
         }
-        reply = searchGameTree(oppositeColor, alpha, beta, depth - 1);
         // undo move
-        undoMove(color, checkedMove);
+        unmakeMove(color, checkedMove);
+        if (timeUp) {
+            // The reply is incomplete; the caller discards this result
+            return bestScore;
+        }
         
-       if ((color == Board.WHITE) &&
-            (reply.score > currBest.score)) {
-            currBest.move = checkedMove;
-            currBest.score = reply.score;
-            alpha = reply.score;
-        } else if ((color == Board.BLACK) &&
-            (reply.score < currBest.score)) {
-            currBest.move = checkedMove;
-            currBest.score = reply.score;
-            beta = reply.score;
+       if ((color == Board.WHITE) && (reply > bestScore)) {
+            bestMove = checkedMove;
+            bestScore = reply;
+            alpha = reply;
+            updatePrincipalVariation(checkedMove, ply);
+        } else if ((color == Board.BLACK) && (reply < bestScore)) {
+            bestMove = checkedMove;
+            bestScore = reply;
+            beta = reply;
+            updatePrincipalVariation(checkedMove, ply);
         }
         // Patch for odd bug that appeared
         if (alpha >= beta) {
-            if (currBest.move == null) {
-                if (possibleMoves.length() == 0) {
-                    currBest.move = new Move();
-                } else {
-                    currBest.move = (Move) possibleMoves.front().item;
-                }
+            recordCutoff(color, checkedMove, plyScores[ply][i], depth, ply, i);
+            break;
+        }
+    }
+    int bound;
+    if (bestScore <= originalAlpha) {
+        bound = TranspositionTable.UPPER;
+    } else if (bestScore >= originalBeta) {
+        bound = TranspositionTable.LOWER;
+    } else {
+        bound = TranspositionTable.EXACT;
+    }
+    if (bestMove == MoveEncoding.NONE) {
+        // The first move was not proven best, so only keep the old hint
+        table.store(key, depth, bound, scoreToTable(bestScore, depth), ttMove);
+        if (numMoves > 0) {
+            bestMove = ordered[0];
+        }
+    } else {
+        table.store(key, depth, bound, scoreToTable(bestScore, depth), bestMove);
+    }
+    if (ply == 0) {
+        searchedMove = bestMove;
+    }
+    return bestScore;
+  }
+
+  // Sets timeUp once the deadline has passed or a stop has been requested, and returns it.  The
+  // clock and the stop flag are only read every 256 calls.
+  private boolean outOfTime() {
+    if (++uncheckedNodes >= 256) {
+        uncheckedNodes = 0;
+        if (stopRequested || ((deadline != 0) && (System.nanoTime() >= deadline))) {
+            timeUp = true;
+        }
+    }
+    return timeUp;
+  }
+
+  // Scores a position at the nominal depth, where neither color has a network.  A color that
+  // can complete a network with its next move has won; otherwise, for up to extensions more
+  // plies, only moves that create such a threat or stop the opponent's are searched, and a
+  // position with neither is scored by evaluateBoard().  Searching just these moves keeps the
+  // extension cheap while catching wins and losses that lie one move past the horizon.
+  private int quiesce(int color, int oppositeColor, int alpha, int beta, int ply, int extensions) {
+    if (outOfTime()) {
+        return 0;
+    }
+    if (ThreatDetector.completingMove(myBoard, color, nextMoveType(color), threatMoves) != MoveEncoding.NONE) {
+        if (SearchStats.DETAILED) {
+            stats.leaves++;
+        }
+        return winScore(color, 0);
+    }
+    if ((extensions == 0) || (ply >= MAX_PLY - 1)) {
+        if (SearchStats.DETAILED) {
+            stats.leaves++;
+        }
+        return evaluateBoard();
+    }
+    int threat = ThreatDetector.completingMove(myBoard, oppositeColor, nextMoveType(oppositeColor), threatMoves);
+    int bestScore;
+    if (threat != MoveEncoding.NONE) {
+        // Every move that does not stop the threat loses
+        bestScore = winScore(oppositeColor, 0);
+    } else {
+        bestScore = evaluateBoard();
+    }
+    if (color == Board.WHITE) {
+        bestScore = Math.max(alpha, bestScore);
+        alpha = bestScore;
+    } else {
+        bestScore = Math.min(beta, bestScore);
+        beta = bestScore;
+    }
+    if (alpha >= beta) {
+        if (SearchStats.DETAILED) {
+            stats.leaves++;
+        }
+        return bestScore;
+    }
+    long targets;
+    if (threat != MoveEncoding.NONE) {
+        targets = ThreatDetector.blockingSquares(myBoard, oppositeColor, threat);
+    } else {
+        // Only moves that extend the pieces joined to the start goal line are tried as threats
+        targets = NetworkFinder.extensionSquares(color, myBoard);
+    }
+    int[] candidates = plyMoves[ply];
+    int numMoves = MoveGenerator.generate(myBoard, color, nextMoveType(color), candidates);
+    for (int i = 0; i < numMoves; i++) {
+        int checkedMove = candidates[i];
+        if (((targets >>> MoveEncoding.to(checkedMove)) & 1L) == 0) {
+            continue;
+        }
+        makeMove(color, checkedMove);
+        int reply;
+        boolean searched = true;
+        if (hasWonGame(oppositeColor)) {
+            // A step opened a line for the opponent
+            reply = winScore(oppositeColor, 0);
+        } else if ((threat != MoveEncoding.NONE) ||
+                   (ThreatDetector.completingMove(myBoard, color, nextMoveType(color), threatMoves) != MoveEncoding.NONE)) {
+            stats.nodes++;
+            pvLength[ply + 1] = ply + 1;
+            reply = quiesce(oppositeColor, color, alpha, beta, ply + 1, extensions - 1);
+        } else {
+            reply = 0;
+            searched = false;
+        }
+        unmakeMove(color, checkedMove);
+        if (timeUp) {
+            return bestScore;
+        }
+        if (!searched) {
+            continue;
+        }
+        if ((color == Board.WHITE) && (reply > bestScore)) {
+            bestScore = reply;
+            alpha = reply;
+            updatePrincipalVariation(checkedMove, ply);
+        } else if ((color == Board.BLACK) && (reply < bestScore)) {
+            bestScore = reply;
+            beta = reply;
+            updatePrincipalVariation(checkedMove, ply);
+        }
+        if (alpha >= beta) {
+            break;
+        }
+    }
+    return bestScore;
+  }
+
+  // Returns the score of a won position for the given winner, with the given remaining depth
+  private int winScore(int winner, int depth) {
+    if (winner == Board.WHITE) {
+        return MAX_SCORE + depth;
+    }
+    return MIN_SCORE - depth;
+  }
+
+  // Makes the line at ply the given move followed by the line found at ply + 1
+  private void updatePrincipalVariation(int move, int ply) {
+    pv[ply][ply] = move;
+    int end = ply + 1;
+    if (ply + 1 < MAX_PLY) {
+        for (int i = ply + 1; i < pvLength[ply + 1]; i++) {
+            pv[ply][i] = pv[ply + 1][i];
+        }
+        end = Math.max(end, pvLength[ply + 1]);
+    }
+    pvLength[ply] = end;
+  }
+
+  // Whether a score is a win or a loss rather than an evaluation.  Read back from the table, a
+  // win can come out below MAX_SCORE by up to the depth of the tree, so the band is MAX_PLY wide.
+  private boolean isWinScore(int score) {
+    return (score >= MAX_SCORE - MAX_PLY) || (score <= MIN_SCORE + MAX_PLY);
+  }
+
+  // Win scores depend on the remaining depth, so the table stores them relative to the node
+  private int scoreToTable(int score, int depth) {
+    if (!isWinScore(score)) {
+        return score;
+    }
+    return (score > 0) ? score - depth : score + depth;
+  }
+
+  // Inverse of scoreToTable() for a node with the given remaining depth
+  private int scoreFromTable(int score, int depth) {
+    if (!isWinScore(score)) {
+        return score;
+    }
+    return (score > 0) ? score + depth : score - depth;
+  }
+
+  // Ordering score tiers, highest first.  Quiet moves are ranked by their history score,
+  // which is kept below KILLER_SCORE.
+  private final static int HINT_SCORE = 1 << 30; // PV move at the root, TT move elsewhere
+  private final static int SECOND_HINT_SCORE = HINT_SCORE - 1; // TT move at the root
+  private final static int WINNING_SCORE = 1 << 29; // Completes a network for the mover
+  private final static int BLOCKING_SCORE = 1 << 28; // Disconnects the opponent's goal lines
+  private final static int KILLER_SCORE = 1 << 27; // Caused a cutoff at the same ply
+  private final static int MAX_HISTORY = KILLER_SCORE - 2;
+
+  /**
+  * Sorts the first n moves of plyMoves[ply], best first: the hint moves, then moves that
+  * complete a network, then moves that block one, then killer moves, then the rest by history
+  * score.  The ordering scores are left in plyScores[ply].
+  *
+  * @param color The color to move
+  * @param ply The distance from the root
+  * @param n The number of moves generated at this ply
+  * @param hint Code of the move to try first, or MoveEncoding.NONE
+  * @param secondHint Code of the move to try next, or MoveEncoding.NONE
+  */
+  private void orderMoves(int color, int ply, int n, int hint, int secondHint) {
+    int[] ordered = plyMoves[ply];
+    int[] scores = plyScores[ply];
+    int[] colorHistory = history[color - 1];
+    int oppositeColor = (color == Board.WHITE) ? Board.BLACK : Board.WHITE;
+    boolean opponentConnected = NetworkFinder.goalLinesConnected(oppositeColor, myBoard);
+    for (int j = 0; j < n; j++) {
+        int code = ordered[j];
+        int score;
+        if (code == hint) {
+            score = HINT_SCORE;
+        } else if (code == secondHint) {
+            score = SECOND_HINT_SCORE;
+        } else {
+            applyToBoard(color, code);
+            if (NetworkFinder.hasWinningNetwork(color, myBoard)) {
+                score = WINNING_SCORE;
+            } else if (opponentConnected && !NetworkFinder.goalLinesConnected(oppositeColor, myBoard)) {
+                score = BLOCKING_SCORE;
+            } else if (code == killers[ply][0]) {
+                score = KILLER_SCORE;
+            } else if (code == killers[ply][1]) {
+                score = KILLER_SCORE - 1;
+            } else {
+                score = colorHistory[code];
             }
-            return currBest;
+            undoOnBoard(color, code);
+        }
+        // Insertion sort, keeping generation order among equal scores
+        int i = j;
+        while ((i > 0) && (scores[i - 1] < score)) {
+            ordered[i] = ordered[i - 1];
+            scores[i] = scores[i - 1];
+            i--;
         }
-        curr = possibleMoves.next(curr);
+        ordered[i] = code;
+        scores[i] = score;
     }
-    if (currBest.move == null) {
-        if (possibleMoves.length() == 0) {
-            currBest.move = new Move();
+  }
+
+  // Updates the killer and history tables after the move at index i caused a cutoff
+  private void recordCutoff(int color, int code, int orderScore, int depth, int ply, int i) {
+    stats.betaCutoffs++;
+    if (i == 0) {
+        stats.firstMoveCutoffs++;
+    }
+    if (orderScore >= WINNING_SCORE) {
+        return;
+    }
+    if (killers[ply][0] != code) {
+        killers[ply][1] = killers[ply][0];
+        killers[ply][0] = code;
+    }
+    int[] colorHistory = history[color - 1];
+    colorHistory[code] = Math.min(MAX_HISTORY, colorHistory[code] + depth * depth);
+  }
+
+  // Ages the killer moves and history table before a new search.  The previous search started
+  // two plies earlier, so its killers move up two plies.
+  private void resetOrdering() {
+    for (int ply = 0; ply < MAX_PLY; ply++) {
+        if (ply + 2 < MAX_PLY) {
+            killers[ply][0] = killers[ply + 2][0];
+            killers[ply][1] = killers[ply + 2][1];
         } else {
-            currBest.move = (Move) possibleMoves.front().item;
+            killers[ply][0] = MoveEncoding.NONE;
+            killers[ply][1] = MoveEncoding.NONE;
+        }
+    }
+    for (int c = 0; c < 2; c++) {
+        for (int code = 0; code < history[c].length; code++) {
+            history[c][code] >>= 1;
         }
     }
-    return currBest;
+  }
+
+  // Applies a move code of the given color directly to the board, without validation or move counts
+  private void applyToBoard(int color, int code) {
+    MoveGenerator.make(myBoard, color, code);
+  }
+
+  // Reverses applyToBoard()
+  private void undoOnBoard(int color, int code) {
+    MoveGenerator.unmake(myBoard, color, code);
+  }
+
+  // Applies a generated move code for the given color and counts it, without validation
+  void makeMove(int color, int code) {
+    applyToBoard(color, code);
+    if (color == playerColor) {
+        moves++;
+    } else {
+        opponentMoves++;
+    }
+  }
+
+  // Reverses makeMove()
+  void unmakeMove(int color, int code) {
+    undoOnBoard(color, code);
+    if (color == playerColor) {
+        moves--;
+    } else {
+        opponentMoves--;
+    }
   }
   
   /**
   * Does a heuristic evaluation of the board. Returns a value from -1000 to 1000, 
   * where 1000 is a win for white, -1000 is a win for black, and 0 is an even game.
+  * Reads the connection counts the board maintains, so this runs in constant time.
   */
-  private int evaluateBoard() {
+  int evaluateBoard() {
+    if (SearchStats.DETAILED) {
+        stats.evaluations++;
+    }
     // Number connections from white pieces - number connections from black pieces
+    int numConnections = myBoard.connectionCount(Board.WHITE) - myBoard.connectionCount(Board.BLACK);
+    assert numConnections == evaluateBoardFully() : "Incremental evaluation out of date";
+    return numConnections;
+  }
+
+  /**
+  * Computes evaluateBoard() from scratch by scanning every piece.  Used to check the
+  * incremental counts when assertions are enabled.
+  */
+  private int evaluateBoardFully() {
     int numConnections = 0;
-    for (int i = 0; i < 8; i++) {
-        for (int j = 0; j < 8; j++) {
-            if (myBoard.piece(i, j) == Board.WHITE) {
-                numConnections += myBoard.connections(Board.WHITE, i, j).length();
-            } else if (myBoard.piece(i,j) == Board.BLACK) {
-                numConnections -= myBoard.connections(Board.BLACK, i, j).length();
-            }
+    for (int sq = 0; sq < 64; sq++) {
+        int piece = myBoard.pieceAt(sq);
+        if (piece == Board.WHITE) {
+            numConnections += Integer.bitCount(myBoard.connectionMask(Board.WHITE, sq));
+        } else if (piece == Board.BLACK) {
+            numConnections -= Integer.bitCount(myBoard.connectionMask(Board.BLACK, sq));
         }
     }
     return numConnections;
   }
   
-  // Return all possible valid moves from the current game state
-  private DList allValidMoves(int color) {
-    DList moves = new DList();
-    if (nextMoveType(color) == Move.ADD) {
-        for (int i =0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                Move m = new Move(i, j);
-                if (isValidMove(color, m)) {
-                    moves.insertBack(m);
-                }
-            }
-        }
-        return moves;
-    } else {
-        // Find pieces
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (myBoard.piece(i, j) == color) {
-                    // Check all 
-                    for (int x = 0; x < 8; x++) {
-                        for (int y = 0; y < 8; y++) {
-                            Move m = new Move(x, y, i, j);
-                            if (isValidMove(color, m)) {
-                                moves.insertBack(m);
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        return moves;
-    }
-  }
-
   // If the Move m is legal, records the move as a move by the opponent
   // (updates the internal game board) and returns true.  If the move is
   // illegal, returns false without modifying the internal state of "this"
   // player.  This method allows your opponents to inform you of their moves.
   public boolean opponentMove(Move m) {
+     stopPondering();
      int color;
     if (playerColor == Board.WHITE)
         color = Board.BLACK;
@@ -224,6 +1290,12 @@ public class MachinePlayer extends Player {
             myBoard.add(color, m.x1, m.y1);
         }
         opponentMoves++;
+        if ((lastPv.length > 2) && (MoveEncoding.encode(m) == lastPv[1])) {
+            expectedMove = lastPv[2];
+            expectedDepth = depthReached - 2;
+        } else {
+            expectedMove = MoveEncoding.NONE;
+        }
         return true;
     } else {
         return false;
@@ -249,23 +1321,34 @@ public class MachinePlayer extends Player {
         return false;
     }
   }
-  
+
   /**
-  * Undoes the move, modifying the internal state of this player.
-  * This assumes that the move given has already been applied. It is called in the game tree search.
+  * Takes back the last move made by "this" player and forgets everything earlier searches
+  * learned: the transposition table, the killer moves and history, and the last principal
+  * variation and score.  The position before the move can then be searched again from cold,
+  * exactly as the first time.  Used by the benchmarks.
+  *
+  * @param m The last move chosen or forced for this player
   */
-  private void undoMove(int color, Move m) {
-    if (m.moveKind == Move.ADD) {
-        myBoard.remove(m.x1, m.y1);
-    } else {
-        myBoard.remove(m.x1, m.y1);
-        myBoard.add(color, m.x2, m.y2);
-    }
-    if (color == playerColor) {
-        moves--;
-    } else {
-        opponentMoves--;
+  void takeBack(Move m) {
+    stopPondering();
+    undoOnBoard(playerColor, MoveEncoding.encode(m));
+    moves--;
+    table.clear();
+    for (int ply = 0; ply < MAX_PLY; ply++) {
+        killers[ply][0] = MoveEncoding.NONE;
+        killers[ply][1] = MoveEncoding.NONE;
+        pvLength[ply] = 0;
     }
+    java.util.Arrays.fill(history[0], 0);
+    java.util.Arrays.fill(history[1], 0);
+    lastPv = new int[0];
+    lastScore = 0;
+    depthReached = 0;
+    rootMove = MoveEncoding.NONE;
+    searchedMove = MoveEncoding.NONE;
+    expectedMove = MoveEncoding.NONE;
+    expectedDepth = 0;
   }
   
   /**
@@ -345,7 +1428,8 @@ public class MachinePlayer extends Player {
             if ((x == 0) || (x == 7))
                 return false;
         }
-        return !makesCluster(color, x, y);
+        // The board keeps this color's cluster squares up to date
+        return ((myBoard.clusterSquares(color) >>> Board.square(x, y)) & 1L) == 0;
     } else if (m.moveKind == Move.STEP) {
         int x1 = m.x1;
         int x2 = m.x2;
@@ -367,11 +1451,9 @@ public class MachinePlayer extends Player {
             if ((x1 == 0) || (x1 == 7))
                 return false;
         }
-        // check cluster after removing a piece, but put it back before method finishes
-        myBoard.remove(x2, y2);
-        boolean cluster = makesCluster(color, x1, y1);
-        myBoard.add(color, x2, y2);
-        return !cluster;
+        // check cluster as if the piece had already left the first location
+        long remaining = myBoard.pieces(color) & ~(1L << Board.square(x2, y2));
+        return !makesCluster(remaining, x1, y1);
     } else {
         // Better error message here?
         System.err.println("Error: Unexpected move type to isValidMove()");
@@ -383,20 +1465,28 @@ public class MachinePlayer extends Player {
   * Returns whether placing a piece at (x,y) will create a cluster of 3 adjacent chips
   * This method assumes that the location given is valid and empty.
   * 
+  * @param pieces mask of the pieces of the color being placed
   * @param x the x-coordinate
   * @param y the y-coordinate
-  * @param color the color of the piece added
-  * @return Whether placing a piece of the Player's color at that point will make a cluster
+  * @return Whether placing a piece of that color at that point will make a cluster
+  */
+  private static boolean makesCluster(long pieces, int x, int y) {
+    return ((Board.clusterSquares(pieces) >>> Board.square(x, y)) & 1L) != 0;
+  }
+
+  /**
+  * The cluster rule as originally written, by scanning the squares around (x,y).  Kept to
+  * check makesCluster() against in main().
   */
-  private boolean makesCluster(int color, int x, int y) {
-    DList adj = adjacent(color, x, y);
+  private static boolean makesClusterByScan(Board board, int color, int x, int y) {
+    DList adj = adjacentByScan(board, color, x, y);
     if (adj.length() >= 2)
         return true;
     if (adj.length() == 0)
         return false;
     int adj_x = ((Coordinate) adj.front().item).getX();
     int adj_y = ((Coordinate) adj.front().item).getY();
-    DList twoAway = adjacent(color, adj_x, adj_y);
+    DList twoAway = adjacentByScan(board, color, adj_x, adj_y);
     if (twoAway.length() > 0)
         return true;
     return false;
@@ -405,20 +1495,16 @@ public class MachinePlayer extends Player {
   /**
   * Returns a list of all cells adjacent to (x,y) of the given color
   * If an invalid coordinate is given, it returns an empty list.
-  *
-  * @param x the x-coordinate
-  * @param y the y-coordinate
-  * @return A list of all coordinates that are next to the given color
   */ 
-  private DList adjacent(int color, int x, int y) {
+  private static DList adjacentByScan(Board board, int color, int x, int y) {
     DList adj = new DList();
     for (int i = x - 1; i <= x + 1; i++) {
         for (int j = y - 1; j <= y + 1; j++) {
             if ((i == x) && (j == y))
                 continue;
-            else if (!myBoard.onBoard(i, j))
+            else if (!board.onBoard(i, j))
                 continue;
-            else if (myBoard.piece(i, j) == color) {
+            else if (board.piece(i, j) == color) {
                 adj.insertBack(new Coordinate(i, j));
             }
         }
@@ -442,37 +1528,304 @@ public class MachinePlayer extends Player {
   * @return Whether there is a network of the given color connecting the two end rows.
   */
   public boolean hasWonGame(int color) {
-    if (color == Board.BLACK) {
-        // Check the top row
-        for (int x = 1; x <= 6; x++) {
-            if (myBoard.piece(x, 0) == Board.BLACK) {
-                DList networks = NetworkFinder.networksFromStart(x, 0, Board.BLACK, myBoard);
-                DListNode n = networks.front();
-                while (n != null) {
-                    if (((Network) n.item).gameWinningNetwork()) {
-                        return true;
+    if (SearchStats.DETAILED || recording()) {
+        return recordedWinCheck(color);
+    }
+    return NetworkFinder.hasWinningNetwork(color, myBoard);
+  }
+
+  // hasWonGame() with its detailed counters and WinCheckEvent
+  private boolean recordedWinCheck(int color) {
+    WinCheckEvent event = new WinCheckEvent();
+    event.begin();
+    long start = System.nanoTime();
+    boolean won = NetworkFinder.hasWinningNetwork(color, myBoard);
+    long nanos = System.nanoTime() - start;
+    event.end();
+    if (SearchStats.DETAILED) {
+        stats.winChecks++;
+        stats.winCheckNanos += nanos;
+    }
+    if (event.shouldCommit()) {
+        event.color = colorName(color);
+        event.won = won;
+        event.positionKey = myBoard.hashKey();
+        event.board = myBoard.toString();
+        event.commit();
+    }
+    return won;
+  }
+
+  /**
+  * Tests the cluster rule and the allocation behaviour of the search.
+  */
+  public static void main(String[] args) {
+    testClusterRule();
+    testThreatDetector();
+    testSearchAllocation();
+    testPondering();
+    testExpectedMove();
+  }
+
+  /**
+  * Tests the mask-based cluster rule against the original scan on random boards, including
+  * boards that already contain clusters.
+  */
+  private static void testClusterRule() {
+    java.util.Random random = new java.util.Random(61);
+    int checked = 0;
+    for (int trial = 0; trial < 20000; trial++) {
+        Board board = new Board();
+        int pieces = random.nextInt(24);
+        for (int i = 0; i < pieces; i++) {
+            if (random.nextInt(4) == 0) {
+                board.remove(random.nextInt(8), random.nextInt(8));
+            } else {
+                board.add(1 + random.nextInt(2), random.nextInt(8), random.nextInt(8));
+            }
+        }
+        for (int color = Board.BLACK; color <= Board.WHITE; color++) {
+            for (int x = 0; x < 8; x++) {
+                for (int y = 0; y < 8; y++) {
+                    if (board.piece(x, y) != Board.EMPTY) {
+                        continue;
+                    }
+                    boolean expected = makesClusterByScan(board, color, x, y);
+                    boolean byMask = makesCluster(board.pieces(color), x, y);
+                    boolean byBoard = ((board.clusterSquares(color) >>> Board.square(x, y)) & 1L) != 0;
+                    if ((expected != byMask) || (expected != byBoard)) {
+                        System.out.println("Cluster rule differs at (" + x + ", " + y + ") for color " + color);
+                        System.out.println(board);
+                        return;
                     }
-                    n = networks.next(n);
+                    checked++;
                 }
             }
         }
-        return false;
-    } else {
-        // Check the left column
-        for (int y = 1; y <= 6; y++) {
-            if (myBoard.piece(0, y) == Board.WHITE) {
-                DList networks = NetworkFinder.networksFromStart(0, y, Board.WHITE, myBoard);
-                DListNode n = networks.front();
-                while (n != null) {
-                    if (((Network) n.item).gameWinningNetwork()) {
-                        return true;
+    }
+    System.out.println("Cluster rule matches the original scan on " + checked + " squares");
+  }
+
+  /**
+  * Tests the threat detector against trying every move, and checks that no move outside the
+  * blocking squares stops a threat, over random games.
+  */
+  private static void testThreatDetector() {
+    java.util.Random random = new java.util.Random(17);
+    int[] moves = new int[MoveGenerator.MAX_MOVES];
+    int[] replies = new int[MoveGenerator.MAX_MOVES];
+    int[] buffer = new int[MoveGenerator.MAX_MOVES];
+    int positions = 0;
+    int threats = 0;
+    for (int game = 0; game < 200; game++) {
+        Board board = new Board();
+        int color = Board.WHITE;
+        for (int ply = 0; ply < 40; ply++) {
+            int other = (color == Board.WHITE) ? Board.BLACK : Board.WHITE;
+            if (NetworkFinder.hasWinningNetwork(color, board) || NetworkFinder.hasWinningNetwork(other, board)) {
+                break;
+            }
+            int kind = (board.numPieces(color) < 10) ? Move.ADD : Move.STEP;
+            int n = MoveGenerator.generate(board, color, kind, moves);
+            boolean expected = false;
+            for (int i = 0; (i < n) && !expected; i++) {
+                MoveGenerator.make(board, color, moves[i]);
+                expected = NetworkFinder.hasWinningNetwork(color, board) && !NetworkFinder.hasWinningNetwork(other, board);
+                MoveGenerator.unmake(board, color, moves[i]);
+            }
+            int threat = ThreatDetector.completingMove(board, color, kind, buffer);
+            if (expected != (threat != MoveEncoding.NONE)) {
+                System.out.println("Threat detector differs for color " + color);
+                System.out.println(board);
+                return;
+            }
+            positions++;
+            if (threat != MoveEncoding.NONE) {
+                threats++;
+                // Let the other color reply to the threat instead of moving
+                long blocks = ThreatDetector.blockingSquares(board, color, threat);
+                int otherKind = (board.numPieces(other) < 10) ? Move.ADD : Move.STEP;
+                int m = MoveGenerator.generate(board, other, otherKind, replies);
+                for (int i = 0; i < m; i++) {
+                    if (((blocks >>> MoveEncoding.to(replies[i])) & 1L) != 0) {
+                        continue;
+                    }
+                    MoveGenerator.make(board, other, replies[i]);
+                    boolean stopped = !NetworkFinder.hasWinningNetwork(other, board) &&
+                        (ThreatDetector.completingMove(board, color, kind, buffer) == MoveEncoding.NONE);
+                    MoveGenerator.unmake(board, other, replies[i]);
+                    if (stopped) {
+                        System.out.println("A move outside the blocking squares stops the threat");
+                        System.out.println(board);
+                        return;
                     }
-                    n = networks.next(n);
                 }
             }
+            if (n == 0) {
+                break;
+            }
+            MoveGenerator.make(board, color, moves[random.nextInt(n)]);
+            color = other;
         }
-        return false;
     }
+    System.out.println("Threat detector matches trying every move on " + positions + " positions, " + threats + " with threats");
   }
-}
 
+  /**
+  * Tests that a fixed-depth chooseMove() allocates a bounded number of bytes however many
+  * nodes it searches, by measuring the calling thread's allocations with ThreadMXBean.
+  */
+  private static void testSearchAllocation() {
+    final long limit = 16 * 1024; // The decoded Move, the saved PV and a little slack
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+    if (!threads.isThreadAllocatedMemorySupported()) {
+        System.out.println("Thread allocation measurement not supported, skipping");
+        return;
+    }
+    long thread = Thread.currentThread().getId();
+    // Warm up so class loading and JIT compilation are not measured
+    for (int i = 0; i < 3; i++) {
+        for (int pos = 0; pos < Positions.SEARCH.length; pos++) {
+            Positions.player(Positions.line(Positions.SEARCH[pos]), 3).chooseMove();
+        }
+    }
+    boolean passed = true;
+    for (int depth = 2; depth <= 4; depth++) {
+        for (int pos = 0; pos < Positions.SEARCH.length; pos++) {
+            MachinePlayer p = Positions.player(Positions.line(Positions.SEARCH[pos]), depth);
+            long before = threads.getThreadAllocatedBytes(thread);
+            p.chooseMove();
+            long bytes = threads.getThreadAllocatedBytes(thread) - before;
+            System.out.println("Depth " + depth + ", position " + pos + ": " + p.nodesSearched() +
+                               " nodes, " + bytes + " bytes allocated");
+            if (bytes > limit) {
+                passed = false;
+            }
+        }
+    }
+    if (passed) {
+        System.out.println("Search allocation stays under " + limit + " bytes per move");
+    } else {
+        System.out.println("FAILED: search allocated more than " + limit + " bytes in a move");
+    }
+  }
+
+  /**
+  * Tests pondering: a ponder hit plays the move the ponder search found, a miss leaves the
+  * board as a replay of the moves would, and close() waits for the ponder thread to end.
+  */
+  private static void testPondering() {
+    int[] line = Positions.line(Positions.OPENING);
+    MachinePlayer p = Positions.player(line, 3);
+    p.setPondering(true);
+    boolean passed = true;
+
+    // Hit: the opponent plays the predicted reply once the ponderer has reached the depth
+    int first = MoveEncoding.encode(p.chooseMove());
+    int reply = p.lastPv[1];
+    long waitUntil = System.nanoTime() + 5000000000L;
+    while ((p.ponderer.depthReached < 3) && (System.nanoTime() < waitUntil)) {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+    }
+    p.opponentMove(MoveEncoding.decode(reply));
+    int pondered = p.ponderer.rootMove;
+    int second = MoveEncoding.encode(p.chooseMove());
+    line = append(line, first, reply, second);
+    if ((p.ponderHits() != 1) || (second != pondered) || !p.hasBoard(line)) {
+        System.out.println("FAILED: a ponder hit did not play the pondered move");
+        passed = false;
+    }
+
+    // Miss: the opponent plays any other legal move
+    int predicted = p.lastPv[1];
+    int[] replies = new int[MoveGenerator.MAX_MOVES];
+    int n = MoveGenerator.generate(Positions.board(line), p.opponentColor, Move.ADD, replies);
+    int miss = (replies[0] == predicted) ? replies[1] : replies[0];
+    p.opponentMove(MoveEncoding.decode(miss));
+    line = append(line, miss);
+    if ((n < 2) || !p.hasBoard(line)) {
+        System.out.println("FAILED: the board after a ponder miss differs from a replay");
+        passed = false;
+    }
+    Move third = p.chooseMove();
+    if ((p.ponderHits() != 1) || !p.hasBoard(append(line, MoveEncoding.encode(third)))) {
+        System.out.println("FAILED: the move after a ponder miss was not played from the real position");
+        passed = false;
+    }
+
+    // Close while the ponderer is searching
+    ExecutorService pool = p.ponderPool;
+    p.close();
+    try {
+        if (!pool.awaitTermination(5, TimeUnit.SECONDS) || (p.ponderTask != null)) {
+            System.out.println("FAILED: close() left the ponder thread running");
+            passed = false;
+        }
+    } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+    }
+    if (passed) {
+        System.out.println("Pondering plays the pondered move on a hit, the real position on a miss, and stops on close()");
+    }
+  }
+
+  /**
+  * Tests the timed search after the opponent plays the reply the last search expected.  The
+  * search resumes deeper than depth 1, so with no time at all no iteration completes and the
+  * move the last search planned must be played; with time it must play a legal move.
+  */
+  private static void testExpectedMove() {
+    boolean passed = true;
+    for (long budget = 0; budget <= 200; budget += 200) {
+        int[] line = Positions.line(Positions.OPENING);
+        MachinePlayer p = Positions.player(line, 3);
+        int first = MoveEncoding.encode(p.chooseMove(1000));
+        if ((p.depthReached() < 4) || (p.lastPv.length < 3)) {
+            System.out.println("Expected-move check skipped: the first search only reached depth " + p.depthReached());
+            return;
+        }
+        int reply = p.lastPv[1];
+        int planned = p.lastPv[2];
+        p.opponentMove(MoveEncoding.decode(reply));
+        if (budget == 0) {
+            // Otherwise the table may answer the first iteration in fewer nodes than the clock
+            // is checked after
+            p.table.clear();
+        }
+        int second = MoveEncoding.encode(p.chooseMove(budget));
+        if (!p.hasBoard(append(line, first, reply, second))) {
+            System.out.println("FAILED: the move after the expected reply, with " + budget + " ms, was not legal");
+            passed = false;
+        }
+        if ((budget == 0) && ((second != planned) || (p.depthReached() != 0) || (p.lastPv.length != 1))) {
+            System.out.println("FAILED: with no time after the expected reply, the search kept stale results or missed the planned move");
+            passed = false;
+        }
+    }
+    if (passed) {
+        System.out.println("After the expected reply, the timed search plays the planned move when out of time");
+    }
+  }
+
+  // Returns the line with the given move codes added at the end
+  private static int[] append(int[] line, int... codes) {
+    int[] longer = java.util.Arrays.copyOf(line, line.length + codes.length);
+    System.arraycopy(codes, 0, longer, line.length, codes.length);
+    return longer;
+  }
+
+  // Returns whether this player's board holds the same pieces as a replay of the line
+  private boolean hasBoard(int[] line) {
+    Board replay = Positions.board(line);
+    return (myBoard.pieces(Board.WHITE) == replay.pieces(Board.WHITE)) &&
+           (myBoard.pieces(Board.BLACK) == replay.pieces(Board.BLACK)) &&
+           (myBoard.hashKey() == replay.hashKey());
+  }
+}
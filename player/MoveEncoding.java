@@ -0,0 +1,80 @@
+/* MoveEncoding.java */
+
+package player;
+
+import board.*;
+
+/**
+* Static helpers that pack a Move into a single int so search tables can store moves in
+* primitive arrays. Bits 0-5 hold the destination square (x1, y1), bits 6-11 the source
+* square (x2, y2) of a step, and bits 12-13 the move kind. The code 0 means "no move".
+*/
+class MoveEncoding {
+
+    static final int NONE = 0;
+
+    /**
+    * Returns the code of an add move to the given square
+    *
+    * @param to The square the piece is added to
+    * @return The move code
+    */
+    static int add(int to) {
+        return (Move.ADD << 12) | to;
+    }
+
+    /**
+    * Returns the code of a step move between two squares
+    *
+    * @param from The square the piece leaves
+    * @param to The square the piece moves to
+    * @return The move code
+    */
+    static int step(int from, int to) {
+        return (Move.STEP << 12) | (from << 6) | to;
+    }
+
+    /**
+    * Returns the code of the given Move, or NONE for a quit move
+    *
+    * @param m The move to encode
+    * @return The move code
+    */
+    static int encode(Move m) {
+        if (m.moveKind == Move.ADD) {
+            return add(Board.square(m.x1, m.y1));
+        } else if (m.moveKind == Move.STEP) {
+            return step(Board.square(m.x2, m.y2), Board.square(m.x1, m.y1));
+        }
+        return NONE;
+    }
+
+    /**
+    * Returns a new Move for the given code. NONE decodes to a quit move.
+    *
+    * @param code The move code
+    * @return The decoded Move
+    */
+    static Move decode(int code) {
+        int to = to(code);
+        if (kind(code) == Move.ADD) {
+            return new Move(Board.squareX(to), Board.squareY(to));
+        } else if (kind(code) == Move.STEP) {
+            int from = from(code);
+            return new Move(Board.squareX(to), Board.squareY(to), Board.squareX(from), Board.squareY(from));
+        }
+        return new Move();
+    }
+
+    static int kind(int code) {
+        return code >>> 12;
+    }
+
+    static int from(int code) {
+        return (code >>> 6) & 63;
+    }
+
+    static int to(int code) {
+        return code & 63;
+    }
+}
@@ -0,0 +1,110 @@
+/* MoveGenerator.java */
+
+package player;
+
+import board.*;
+
+/**
+* Static methods that generate every valid move for one color as move codes (see MoveEncoding),
+* without allocating.  Valid destination squares are computed as bitmasks of empty squares that
+* are not corners, not in the other color's home rows and not going to form a cluster, so no
+* move is ever tried on the board.  The rules match MachinePlayer.isValidMove().
+*/
+class MoveGenerator {
+
+    static final int MAX_MOVES = 640; // More than 10 pieces times 54 destinations
+
+    /**
+    * Writes every valid move of the given color into out and returns the number of moves.
+    * Add moves come in increasing square order; step moves are grouped by the piece moved.
+    *
+    * @param board The board to generate moves for
+    * @param color The color to move
+    * @param moveKind Move.ADD or Move.STEP, the kind of move the color must make
+    * @param out The buffer for the moves, at least MAX_MOVES long
+    * @return The number of moves written
+    */
+    static int generate(Board board, int color, int moveKind, int[] out) {
+        long own = board.pieces(color);
+        long open = ~board.occupied() & ~Board.CORNERS & ~forbiddenHomeRows(color);
+        int n = 0;
+        if (moveKind == Move.ADD) {
+            long targets = addSquares(board, color);
+            while (targets != 0) {
+                int to = Long.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+                out[n++] = MoveEncoding.add(to);
+            }
+        } else {
+            long pieces = own;
+            while (pieces != 0) {
+                int from = Long.numberOfTrailingZeros(pieces);
+                pieces &= pieces - 1;
+                long targets = open & ~Board.clusterSquares(own & ~(1L << from));
+                while (targets != 0) {
+                    int to = Long.numberOfTrailingZeros(targets);
+                    targets &= targets - 1;
+                    out[n++] = MoveEncoding.step(from, to);
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+    * Returns the squares the given color may add a piece to
+    *
+    * @param board The board
+    * @param color The color to move
+    * @return Mask of the destination squares of the color's add moves
+    */
+    static long addSquares(Board board, int color) {
+        return ~board.occupied() & ~Board.CORNERS & ~forbiddenHomeRows(color) & ~board.clusterSquares(color);
+    }
+
+    /**
+    * Plays a move code on the board
+    *
+    * @param board The board
+    * @param color The color making the move
+    * @param code The move code, not MoveEncoding.NONE
+    */
+    static void make(Board board, int color, int code) {
+        int to = MoveEncoding.to(code);
+        if (MoveEncoding.kind(code) == Move.STEP) {
+            int from = MoveEncoding.from(code);
+            board.remove(Board.squareX(from), Board.squareY(from));
+        }
+        board.add(color, Board.squareX(to), Board.squareY(to));
+    }
+
+    /**
+    * Takes back a move code played with make()
+    *
+    * @param board The board
+    * @param color The color that made the move
+    * @param code The move code
+    */
+    static void unmake(Board board, int color, int code) {
+        int to = MoveEncoding.to(code);
+        board.remove(Board.squareX(to), Board.squareY(to));
+        if (MoveEncoding.kind(code) == Move.STEP) {
+            int from = MoveEncoding.from(code);
+            board.add(color, Board.squareX(from), Board.squareY(from));
+        }
+    }
+
+    /**
+    * Returns the home rows the given color may not place pieces in: the top and bottom rows
+    * for white, the left and right columns for black.
+    *
+    * @param color The color of the player
+    * @return Mask of the forbidden rows
+    */
+    static long forbiddenHomeRows(int color) {
+        if (color == Board.WHITE) {
+            return Board.TOP_HOME_ROW | Board.BOTTOM_HOME_ROW;
+        }
+        return Board.LEFT_HOME_ROW | Board.RIGHT_HOME_ROW;
+    }
+}
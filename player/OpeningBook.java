@@ -0,0 +1,194 @@
+/* OpeningBook.java */
+
+package player;
+
+import board.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+* A read-only opening book: a file of (position key, best move, score, depth) entries sorted by
+* key, written by OpeningBookBuilder.  The file is memory-mapped and searched in place by binary
+* search, so opening a book does no parsing and costs no heap however large the book is.
+*
+* File layout, big-endian: a 16-byte header (MAGIC, VERSION, entry count, unused) followed by
+* 16-byte entries: the Zobrist key with side to move (long, see Board.hashKey(int)), the move
+* code (short, see MoveEncoding), the search depth (short) and the score from white's point of
+* view (int).
+*/
+public class OpeningBook {
+
+    static final int MAGIC = 0x4E57424B; // "NWBK"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int ENTRY_SIZE = 16;
+
+    private final ByteBuffer entries; // The mapped file
+    private final int size; // Number of entries
+
+    private OpeningBook(ByteBuffer entries, int size) {
+        this.entries = entries;
+        this.size = size;
+    }
+
+    /**
+    * Maps a book file into memory
+    *
+    * @param file The path of a file written by OpeningBookBuilder
+    * @return The book
+    * @throws IOException If the file cannot be read or is not a book
+    */
+    public static OpeningBook open(String file) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+        try {
+            long length = channel.size();
+            if (length < HEADER_SIZE) {
+                throw new IOException(file + " is not an opening book");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if ((buffer.getInt(0) != MAGIC) || (buffer.getInt(4) != VERSION)) {
+                throw new IOException(file + " is not a version " + VERSION + " opening book");
+            }
+            int size = buffer.getInt(8);
+            if (HEADER_SIZE + (long) size * ENTRY_SIZE > length) {
+                throw new IOException(file + " is truncated");
+            }
+            return new OpeningBook(buffer, size);
+        } finally {
+            // The mapping stays valid after the channel is closed
+            channel.close();
+        }
+    }
+
+    /**
+    * Returns the number of positions in the book
+    */
+    public int size() {
+        return size;
+    }
+
+    /**
+    * Returns the index of the entry for the given key, or -1 if the position is not in the book
+    *
+    * @param key The Zobrist key of the position with side to move
+    * @return The entry index
+    */
+    int find(long key) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = entries.getLong(offset(mid));
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    long key(int index) {
+        return entries.getLong(offset(index));
+    }
+
+    int move(int index) {
+        return entries.getShort(offset(index) + 8) & 0xFFFF;
+    }
+
+    int depth(int index) {
+        return entries.getShort(offset(index) + 10);
+    }
+
+    int score(int index) {
+        return entries.getInt(offset(index) + 12);
+    }
+
+    private static int offset(int index) {
+        return HEADER_SIZE + index * ENTRY_SIZE;
+    }
+
+    /**
+    * Builds a small book, maps it, and plays out its line through MachinePlayer.chooseMove(),
+    * checking that each player finds the position the builder stored and plays its move.
+    */
+    public static void main(String[] args) throws Exception {
+        File file = File.createTempFile("network", ".book");
+        file.deleteOnExit();
+        // The empty board and every first move, then the book reply and the answer to it
+        OpeningBookBuilder.build(file.getPath(), 3, 1, 2, 2);
+        OpeningBook book = OpeningBook.open(file.getPath());
+
+        // The builder's move must be the one a search plays, so the codes agree both ways
+        int first = book.find(new Board().hashKey(Board.WHITE));
+        if (first < 0) {
+            System.out.println("FAILED: the empty board is not in the book");
+            return;
+        }
+        Move searched = new MachinePlayer(1, 2).chooseMove();
+        if (book.move(first) != MoveEncoding.encode(searched)) {
+            System.out.println("FAILED: the book move " + MoveEncoding.decode(book.move(first)) +
+                               " on the empty board is not the searched move " + searched);
+            return;
+        }
+
+        MachinePlayer white = new MachinePlayer(1, 2);
+        MachinePlayer black = new MachinePlayer(0, 2);
+        white.setOpeningBook(book);
+        black.setOpeningBook(book);
+        Board board = new Board();
+        Recording recording = new Recording();
+        recording.enable("network.ChooseMove");
+        recording.start();
+        // Three plies are in the book, and the fourth position is searched
+        for (int ply = 0; ply < 4; ply++) {
+            MachinePlayer mover = (ply % 2 == 0) ? white : black;
+            MachinePlayer other = (ply % 2 == 0) ? black : white;
+            int color = (ply % 2 == 0) ? Board.WHITE : Board.BLACK;
+            int index = book.find(board.hashKey(color));
+            if ((index >= 0) != (ply < 3)) {
+                System.out.println("FAILED: the position at ply " + ply + " is " +
+                                   ((index >= 0) ? "" : "not ") + "in the book");
+                return;
+            }
+            Move m = mover.chooseMove();
+            SearchStats stats = mover.searchStats();
+            if (index >= 0) {
+                if (MoveEncoding.encode(m) != book.move(index)) {
+                    System.out.println("FAILED: played " + m + " at ply " + ply + " instead of the book move " +
+                                       MoveEncoding.decode(book.move(index)));
+                    return;
+                }
+                if ((stats.nodes != 0) || (stats.depth != book.depth(index))) {
+                    System.out.println("FAILED: the book move at ply " + ply + " searched " + stats.nodes +
+                                       " nodes to depth " + stats.depth);
+                    return;
+                }
+            }
+            other.opponentMove(m);
+            MoveGenerator.make(board, color, MoveEncoding.encode(m));
+        }
+        recording.stop();
+        Path dump = Files.createTempFile("network", ".jfr");
+        recording.dump(dump);
+        recording.close();
+        List<String> sources = new ArrayList<String>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+            sources.add(event.getString("source"));
+        }
+        Files.delete(dump);
+        if (!sources.equals(Arrays.asList("book", "book", "book", "search"))) {
+            System.out.println("FAILED: the moves reported the sources " + sources);
+            return;
+        }
+        System.out.println("A built book maps back and chooseMove() plays its moves with source book");
+    }
+}
@@ -0,0 +1,179 @@
+/* OpeningBookBuilder.java */
+
+package player;
+
+import board.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+* Builds an opening book offline.  Starting from the empty board, every position reachable in
+* the first few plies is searched deeply, one position per task across all cores; after that
+* only the book move of each position is followed.  Positions reached by different move orders
+* are searched once.  The results are sorted by key and written in the format OpeningBook maps.
+*
+* Usage: java player.OpeningBookBuilder file [plies [fullWidthPlies [depth [threads]]]]
+*/
+public class OpeningBookBuilder {
+
+    /**
+    * Builds a book and writes it to a file
+    *
+    * @param file The path of the book to write
+    * @param plies Positions up to this many plies from the start are put in the book
+    * @param fullWidthPlies Every move is followed from positions before this ply
+    * @param depth The search depth for each position
+    * @param threads The number of positions searched at once
+    * @return The number of positions written
+    * @throws IOException If the file cannot be written
+    * @throws InterruptedException If interrupted while waiting for searches
+    */
+    public static int build(String file, int plies, int fullWidthPlies, final int depth, int threads)
+        throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        TreeMap<Long, long[]> book = new TreeMap<Long, long[]>();
+        List<int[]> level = new ArrayList<int[]>();
+        level.add(new int[0]);
+        try {
+            for (int ply = 0; ply < plies && !level.isEmpty(); ply++) {
+                // Search every new position of this ply in parallel
+                List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+                for (final int[] line : level) {
+                    results.add(pool.submit(new Callable<long[]>() {
+                        public long[] call() {
+                            return search(line, depth);
+                        }
+                    }));
+                }
+                List<int[]> next = new ArrayList<int[]>();
+                Set<Long> seen = new HashSet<Long>();
+                for (int i = 0; i < level.size(); i++) {
+                    long[] result;
+                    try {
+                        result = results.get(i).get();
+                    } catch (ExecutionException e) {
+                        throw new RuntimeException(e.getCause());
+                    }
+                    book.put(result[0], result);
+                    int[] line = level.get(i);
+                    int[] children;
+                    if (ply < fullWidthPlies) {
+                        children = legalMoves(line);
+                    } else {
+                        children = new int[] { (int) result[1] };
+                    }
+                    for (int c = 0; c < children.length; c++) {
+                        if (children[c] == MoveEncoding.NONE) {
+                            continue;
+                        }
+                        int[] child = Arrays.copyOf(line, line.length + 1);
+                        child[line.length] = children[c];
+                        long key = keyOf(child);
+                        if (!book.containsKey(key) && seen.add(key)) {
+                            next.add(child);
+                        }
+                    }
+                }
+                System.out.println("Ply " + ply + ": " + level.size() + " positions searched");
+                level = next;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        write(file, book);
+        return book.size();
+    }
+
+    // Searches the position after the given moves; returns { key, move, depth, score }
+    private static long[] search(int[] line, int depth) {
+        int color = (line.length % 2 == 0) ? Board.WHITE : Board.BLACK;
+        MachinePlayer p = new MachinePlayer(color == Board.WHITE ? 1 : 0, depth);
+        Board board = replay(line);
+        for (int i = 0; i < line.length; i++) {
+            Move m = MoveEncoding.decode(line[i]);
+            int mover = (i % 2 == 0) ? Board.WHITE : Board.BLACK;
+            if (mover == color) {
+                p.forceMove(m);
+            } else {
+                p.opponentMove(m);
+            }
+        }
+        Move m = p.chooseMove();
+        return new long[] { board.hashKey(color), MoveEncoding.encode(m), depth, p.lastScore() };
+    }
+
+    // Returns every legal move in the position after the given moves
+    private static int[] legalMoves(int[] line) {
+        Board board = replay(line);
+        int color = (line.length % 2 == 0) ? Board.WHITE : Board.BLACK;
+        int kind = (board.numPieces(color) < 10) ? Move.ADD : Move.STEP;
+        int[] buffer = new int[MoveGenerator.MAX_MOVES];
+        int n = MoveGenerator.generate(board, color, kind, buffer);
+        return Arrays.copyOf(buffer, n);
+    }
+
+    // Returns the key, with side to move, of the position after the given moves
+    private static long keyOf(int[] line) {
+        int color = (line.length % 2 == 0) ? Board.WHITE : Board.BLACK;
+        return replay(line).hashKey(color);
+    }
+
+    // Plays the given moves, white first, on an empty board
+    private static Board replay(int[] line) {
+        Board board = new Board();
+        for (int i = 0; i < line.length; i++) {
+            int color = (i % 2 == 0) ? Board.WHITE : Board.BLACK;
+            int to = MoveEncoding.to(line[i]);
+            if (MoveEncoding.kind(line[i]) == Move.STEP) {
+                int from = MoveEncoding.from(line[i]);
+                board.remove(Board.squareX(from), Board.squareY(from));
+            }
+            board.add(color, Board.squareX(to), Board.squareY(to));
+        }
+        return board;
+    }
+
+    // Writes the entries, already sorted by key, in the OpeningBook format
+    private static void write(String file, TreeMap<Long, long[]> book) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(OpeningBook.VERSION);
+            out.writeInt(book.size());
+            out.writeInt(0);
+            for (long[] entry : book.values()) {
+                out.writeLong(entry[0]);
+                out.writeShort((int) entry[1]);
+                out.writeShort((int) entry[2]);
+                out.writeInt((int) entry[3]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java player.OpeningBookBuilder file [plies [fullWidthPlies [depth [threads]]]]");
+            System.exit(1);
+        }
+        int plies = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+        int fullWidthPlies = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+        int depth = (args.length > 3) ? Integer.parseInt(args[3]) : 5;
+        int threads = (args.length > 4) ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        int size = build(args[0], plies, fullWidthPlies, depth, threads);
+        System.out.println("Wrote " + size + " positions to " + args[0] + " in " +
+                           (System.nanoTime() - start) / 1000000 + " ms");
+        // Check the file maps back and every position can be found
+        OpeningBook book = OpeningBook.open(args[0]);
+        for (int i = 0; i < book.size(); i++) {
+            if (book.find(book.key(i)) != i) {
+                System.out.println("FAILED: entry " + i + " cannot be found");
+                return;
+            }
+        }
+        System.out.println("Mapped " + book.size() + " positions back from " + args[0]);
+    }
+}
@@ -0,0 +1,144 @@
+/* Perft.java */
+
+package player;
+
+import board.*;
+
+/**
+* Counts the leaves of the move tree below a position to a fixed depth ("perft"), to check and
+* time move generation apart from search and evaluation.  Each color adds pieces until it has
+* placed 10 and steps after that, as in MachinePlayer.isValidMove().  A network does not end
+* the walk, so the counts are of move sequences, not of games.
+*
+* The tree is walked with MoveGenerator, and the counts are checked against reference counts
+* made by trying every candidate move with MachinePlayer.isValidMove().  Given "check", the
+* slow walk is run again instead of trusting the stored counts.  Walks deeper than the
+* reference counts are timed but not checked.
+*
+* Usage: java player.Perft [depth] [check]
+* where depth defaults to the deepest reference count of each position.
+*/
+public class Perft {
+
+    private static final int MAX_DEPTH = 8; // Deepest walk the move buffers allow
+
+    // The positions walked, from Positions
+    private static final int[] POSITIONS = { Positions.EMPTY, Positions.ADD_PHASE, Positions.LAST_ADDS,
+                                             Positions.STEP_PHASE };
+
+    // REFERENCE[position][depth - 1] is the number of leaves at that depth
+    private static final long[][] REFERENCE = {
+        { 48, 2268, 104904, 4773960 },
+        { 36, 1237, 37472, 1010660 },
+        { 14, 275, 39327, 6817133 },
+        { 133, 24464, 3610496 }
+    };
+
+    /**
+    * Returns the number of move sequences of the given length from a position.  The board is
+    * left as it was.
+    *
+    * @param board The position
+    * @param color The color to move
+    * @param depth The number of moves in each sequence, at least 1
+    * @param buffers A move buffer for each remaining depth, MoveGenerator.MAX_MOVES long
+    * @return The number of leaves
+    */
+    static long perft(Board board, int color, int depth, int[][] buffers) {
+        int[] buffer = buffers[depth - 1];
+        int kind = (board.numPieces(color) < 10) ? Move.ADD : Move.STEP;
+        int n = MoveGenerator.generate(board, color, kind, buffer);
+        if (depth == 1) {
+            return n;
+        }
+        int other = Board.WHITE + Board.BLACK - color;
+        long leaves = 0;
+        for (int i = 0; i < n; i++) {
+            MoveGenerator.make(board, color, buffer[i]);
+            leaves += perft(board, other, depth - 1, buffers);
+            MoveGenerator.unmake(board, color, buffer[i]);
+        }
+        return leaves;
+    }
+
+    /**
+    * Returns the same count as perft(), by offering every add move and every step move of a
+    * piece of the color to isValidMove().  Slow; used to make and check the reference counts.
+    *
+    * @param player A player holding the position
+    * @param color The color to move
+    * @param depth The number of moves in each sequence
+    * @return The number of leaves
+    */
+    static long perftByRules(MachinePlayer player, int color, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        int other = Board.WHITE + Board.BLACK - color;
+        long leaves = 0;
+        for (int to = 0; to < 64; to++) {
+            Move add = new Move(Board.squareX(to), Board.squareY(to));
+            if (player.isValidMove(color, add)) {
+                leaves += perftByRules(player, other, depth - 1, add, color);
+            }
+            for (int from = 0; from < 64; from++) {
+                Move step = new Move(Board.squareX(to), Board.squareY(to), Board.squareX(from), Board.squareY(from));
+                if (player.isValidMove(color, step)) {
+                    leaves += perftByRules(player, other, depth - 1, step, color);
+                }
+            }
+        }
+        return leaves;
+    }
+
+    // Plays a move, counts the leaves below it and takes it back
+    private static long perftByRules(MachinePlayer player, int other, int depth, Move m, int color) {
+        int code = MoveEncoding.encode(m);
+        player.makeMove(color, code);
+        long leaves = perftByRules(player, other, depth);
+        player.unmakeMove(color, code);
+        return leaves;
+    }
+
+    public static void main(String[] args) {
+        int maxDepth = (args.length > 0) ? Integer.parseInt(args[0]) : 0;
+        if ((maxDepth < 0) || (maxDepth > MAX_DEPTH)) {
+            throw new IllegalArgumentException("Depth must be from 1 to " + MAX_DEPTH);
+        }
+        boolean check = (args.length > 1) && args[1].equals("check");
+        int[][] buffers = new int[MAX_DEPTH][MoveGenerator.MAX_MOVES];
+        boolean allCorrect = true;
+        long totalLeaves = 0;
+        long totalNanos = 0;
+        for (int position = 0; position < POSITIONS.length; position++) {
+            int[] line = Positions.line(POSITIONS[position]);
+            System.out.println(Positions.name(POSITIONS[position]) + ":");
+            Board board = Positions.board(line);
+            int color = Positions.toMove(line);
+            int depths = (maxDepth > 0) ? maxDepth : REFERENCE[position].length;
+            for (int depth = 1; depth <= depths; depth++) {
+                long start = System.nanoTime();
+                long leaves = perft(board, color, depth, buffers);
+                long nanos = Math.max(1, System.nanoTime() - start);
+                totalLeaves += leaves;
+                totalNanos += nanos;
+                long expected = -1;
+                if (check) {
+                    expected = perftByRules(Positions.player(line, 1), color, depth);
+                } else if (depth <= REFERENCE[position].length) {
+                    expected = REFERENCE[position][depth - 1];
+                }
+                String result = "not checked";
+                if (expected >= 0) {
+                    result = (leaves == expected) ? "ok" : "WRONG, expected " + expected;
+                    allCorrect = allCorrect && (leaves == expected);
+                }
+                System.out.println("  depth " + depth + ": " + leaves + " leaves in " + nanos / 1000000 + " ms, " +
+                                   (long) (leaves * 1e9 / nanos) + " leaves/sec, " + result);
+            }
+        }
+        System.out.println("Total: " + totalLeaves + " leaves in " + totalNanos / 1000000 + " ms, " +
+                           (long) (totalLeaves * 1e9 / Math.max(1, totalNanos)) + " leaves/sec");
+        System.out.println(allCorrect ? "All counts match" : "Some counts are WRONG");
+    }
+}
@@ -0,0 +1,117 @@
+/* Positions.java */
+
+package player;
+
+import board.*;
+
+/**
+* Fixed positions shared by the self-checks, Perft and the benchmarks, and the helpers that
+* set a board or a player up at a position.  A position is given as its line: the move codes,
+* alternating white then black, that lead to it from the empty board.
+*/
+final class Positions {
+
+    // Indices of the fixed positions
+    static final int EMPTY = 0;
+    static final int OPENING = 1;
+    static final int ADD_PHASE = 2;
+    static final int LAST_ADDS = 3;
+    static final int STEP_PHASE = 4;
+
+    // The positions the search checks and benchmarks use, one from each stage of the game
+    static final int[] SEARCH = { OPENING, ADD_PHASE, STEP_PHASE };
+
+    private static final String[] NAMES = { "empty board", "opening", "add phase", "last adds", "step phase" };
+
+    private static final Move[][] LINES = {
+        {},
+        { new Move(0, 3), new Move(3, 0), new Move(2, 3), new Move(3, 2), new Move(4, 4), new Move(5, 2) },
+        { new Move(0, 2), new Move(2, 0), new Move(2, 2), new Move(4, 1), new Move(5, 2), new Move(4, 3),
+          new Move(3, 5), new Move(1, 4), new Move(7, 5), new Move(6, 6), new Move(0, 5) },
+        { new Move(0, 1), new Move(1, 0), new Move(2, 1), new Move(4, 0), new Move(3, 3), new Move(3, 1),
+          new Move(5, 3), new Move(1, 3), new Move(0, 5), new Move(6, 2), new Move(4, 6), new Move(2, 5),
+          new Move(6, 5), new Move(5, 5), new Move(1, 6), new Move(3, 7), new Move(7, 4), new Move(6, 0) },
+        { new Move(0, 1), new Move(1, 0), new Move(2, 1), new Move(4, 0), new Move(3, 3), new Move(3, 1),
+          new Move(5, 3), new Move(1, 3), new Move(0, 5), new Move(6, 2), new Move(4, 6), new Move(2, 5),
+          new Move(6, 5), new Move(5, 5), new Move(1, 6), new Move(3, 7), new Move(7, 4), new Move(6, 0),
+          new Move(3, 4), new Move(4, 7),
+          new Move(5, 1, 2, 1), new Move(1, 2, 1, 3) }
+    };
+
+    private Positions() {
+    }
+
+    /**
+    * Returns the number of fixed positions
+    */
+    static int count() {
+        return LINES.length;
+    }
+
+    /**
+    * Returns the name of a fixed position, such as "step phase"
+    */
+    static String name(int position) {
+        return NAMES[position];
+    }
+
+    /**
+    * Returns the line of a fixed position
+    *
+    * @param position One of EMPTY to STEP_PHASE
+    * @return New array of move codes
+    */
+    static int[] line(int position) {
+        Move[] moves = LINES[position];
+        int[] line = new int[moves.length];
+        for (int i = 0; i < moves.length; i++) {
+            line[i] = MoveEncoding.encode(moves[i]);
+        }
+        return line;
+    }
+
+    /**
+    * Returns the Board color to move at the end of a line
+    */
+    static int toMove(int[] line) {
+        // White moves first, so white is to move after an even number of moves
+        return (line.length % 2 == 0) ? Board.WHITE : Board.BLACK;
+    }
+
+    /**
+    * Returns a new board with the moves of a line played on it
+    */
+    static Board board(int[] line) {
+        Board board = new Board();
+        for (int i = 0; i < line.length; i++) {
+            MoveGenerator.make(board, (i % 2 == 0) ? Board.WHITE : Board.BLACK, line[i]);
+        }
+        return board;
+    }
+
+    /**
+    * Returns a new player, of the color to move, that has played out a line
+    *
+    * @param line The move codes
+    * @param depth The player's search depth
+    * @return The player
+    */
+    static MachinePlayer player(int[] line, int depth) {
+        // MachinePlayer numbers its colors 0 for black and 1 for white
+        int color = (toMove(line) == Board.WHITE) ? 1 : 0;
+        MachinePlayer p = new MachinePlayer(color, depth);
+        for (int i = 0; i < line.length; i++) {
+            Move m = MoveEncoding.decode(line[i]);
+            boolean ok;
+            if ((i % 2 == 0) == (color == 1)) {
+                ok = p.forceMove(m);
+            } else {
+                ok = p.opponentMove(m);
+            }
+            if (!ok) {
+                throw new IllegalStateException("Illegal move " + m + " at ply " + i);
+            }
+        }
+        return p;
+    }
+}
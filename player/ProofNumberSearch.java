@@ -0,0 +1,424 @@
+/* ProofNumberSearch.java */
+
+package player;
+
+import board.*;
+
+/**
+* A depth-first proof-number (df-pn) solver that proves or disproves "the attacker can force a
+* winning network within N plies".  Unlike alpha-beta it needs no evaluation function: it grows
+* the tree towards the moves that are cheapest to prove or refute, so forced wins are found
+* well beyond the depth the main search reaches.
+*
+* Proof and disproof numbers are cached in a fixed-size table keyed by position, side to move
+* and remaining plies, so memory stays bounded however long the solver runs.  A node limit
+* bounds the time; a search that hits it reports UNKNOWN.
+*
+* The move rules are those of MachinePlayer: a color adds pieces until it has 10 on the board
+* and steps after that.  If both colors have a network, the player to move wins.
+*
+* main() checks the solver against a brute-force minimax search over every move, and checks
+* that it finds a win a shallow MachinePlayer search misses.
+*/
+public class ProofNumberSearch {
+
+    public static final int PROVEN = 1; // The attacker can force a win
+    public static final int DISPROVEN = 2; // The defender can avoid losing within the plies
+    public static final int UNKNOWN = 3; // The node limit was reached first
+
+    private static final long INFINITY = 1L << 40; // Proof or disproof number of a decided node
+    private static final long EMPTY_KEY = 0x5A5A5A5A5A5A5A5AL; // Marks an unused table slot
+    private static final int MAX_PLIES = 64;
+
+    private final long[] keys;
+    private final long[] proofs;
+    private final long[] disproofs;
+    private final int mask;
+    private final long nodeLimit;
+
+    // State of the current solve()
+    private Board board;
+    private int attacker;
+    private long nodes;
+    private int result;
+    private int[][] plyMoves = new int[MAX_PLIES][MoveGenerator.MAX_MOVES];
+    private long[][] childProofs = new long[MAX_PLIES][MoveGenerator.MAX_MOVES];
+    private long[][] childDisproofs = new long[MAX_PLIES][MoveGenerator.MAX_MOVES];
+    private long childProof; // Set by evaluateChild()
+    private long childDisproof; // Set by evaluateChild()
+
+    /**
+    * Creates a solver
+    *
+    * @param tableSize The number of table slots, rounded down to a power of two
+    * @param nodeLimit The most nodes one call to solve() may expand
+    */
+    public ProofNumberSearch(int tableSize, long nodeLimit) {
+        int slots = Integer.highestOneBit(Math.max(1, tableSize));
+        keys = new long[slots];
+        proofs = new long[slots];
+        disproofs = new long[slots];
+        mask = slots - 1;
+        this.nodeLimit = nodeLimit;
+        java.util.Arrays.fill(keys, EMPTY_KEY);
+    }
+
+    /**
+    * Tries to prove that the attacker can force a winning network within the given number of
+    * plies.  The board is used for the search and left as it was found.
+    *
+    * @param board The position to solve
+    * @param attacker The color trying to win
+    * @param toMove The color to move
+    * @param plies The most plies, counting both colors, the win may take
+    * @return The winning line, starting with the move of toMove, or null if none was proven
+    */
+    public Move[] solve(Board board, int attacker, int toMove, int plies) {
+        this.board = board;
+        this.attacker = attacker;
+        nodes = 0;
+        plies = Math.min(plies, MAX_PLIES - 1);
+        int winner = winner(toMove);
+        if (winner != Board.EMPTY) {
+            result = (winner == attacker) ? PROVEN : DISPROVEN;
+            return (winner == attacker) ? new Move[0] : null;
+        }
+        if (plies == 0) {
+            result = DISPROVEN;
+            return null;
+        }
+        search(toMove, plies, 0, INFINITY, INFINITY);
+        if (childProof == 0) {
+            result = PROVEN;
+        } else if (childDisproof == 0) {
+            result = DISPROVEN;
+        } else {
+            result = UNKNOWN;
+        }
+        if (result != PROVEN) {
+            return null;
+        }
+        int[] line = new int[plies];
+        int length = extractLine(toMove, plies, 0, line);
+        Move[] moves = new Move[length];
+        for (int i = 0; i < length; i++) {
+            moves[i] = MoveEncoding.decode(line[i]);
+        }
+        return moves;
+    }
+
+    /**
+    * Returns PROVEN, DISPROVEN or UNKNOWN for the last call to solve()
+    */
+    public int lastResult() {
+        return result;
+    }
+
+    /**
+    * Returns the number of nodes expanded by the last call to solve()
+    */
+    public long nodes() {
+        return nodes;
+    }
+
+    // Expands the node until its proof or disproof number reaches its threshold (Nagai's MID),
+    // stores them and leaves them in childProof and childDisproof
+    private void search(int toMove, int remaining, int ply, long proofThreshold, long disproofThreshold) {
+        nodes++;
+        long key = key(toMove, remaining);
+        int[] moves = plyMoves[ply];
+        long[] pn = childProofs[ply];
+        long[] dn = childDisproofs[ply];
+        int n = MoveGenerator.generate(board, toMove, moveKind(toMove), moves);
+        if (n == 0) {
+            // A player who cannot move has not lost, so this is not a forced win
+            store(key, INFINITY, 0);
+            childProof = INFINITY;
+            childDisproof = 0;
+            return;
+        }
+        boolean orNode = (toMove == attacker);
+        int next = opposite(toMove);
+        for (int i = 0; i < n; i++) {
+            MoveGenerator.make(board, toMove, moves[i]);
+            evaluateChild(next, remaining - 1);
+            MoveGenerator.unmake(board, toMove, moves[i]);
+            pn[i] = childProof;
+            dn[i] = childDisproof;
+        }
+        while (true) {
+            // The children's numbers are kept here rather than re-read from the table, where
+            // they may have been overwritten
+            long proof;
+            long disproof;
+            if (orNode) {
+                proof = INFINITY;
+                disproof = 0;
+            } else {
+                proof = 0;
+                disproof = INFINITY;
+            }
+            int best = 0;
+            long second = INFINITY;
+            for (int i = 0; i < n; i++) {
+                long own = orNode ? pn[i] : dn[i];
+                long bestOwn = orNode ? pn[best] : dn[best];
+                if ((i > 0) && (own < bestOwn)) {
+                    second = bestOwn;
+                    best = i;
+                } else if ((i > 0) && (own < second)) {
+                    second = own;
+                }
+                if (orNode) {
+                    proof = Math.min(proof, pn[i]);
+                    disproof = Math.min(INFINITY, disproof + dn[i]);
+                } else {
+                    proof = Math.min(INFINITY, proof + pn[i]);
+                    disproof = Math.min(disproof, dn[i]);
+                }
+            }
+            if ((proof >= proofThreshold) || (disproof >= disproofThreshold) || (nodes > nodeLimit)) {
+                store(key, proof, disproof);
+                childProof = proof;
+                childDisproof = disproof;
+                return;
+            }
+            long childProofThreshold;
+            long childDisproofThreshold;
+            if (orNode) {
+                childProofThreshold = Math.min(proofThreshold, second + 1);
+                childDisproofThreshold = disproofThreshold - disproof + dn[best];
+            } else {
+                childProofThreshold = proofThreshold - proof + pn[best];
+                childDisproofThreshold = Math.min(disproofThreshold, second + 1);
+            }
+            MoveGenerator.make(board, toMove, moves[best]);
+            search(next, remaining - 1, ply + 1, childProofThreshold, childDisproofThreshold);
+            MoveGenerator.unmake(board, toMove, moves[best]);
+            pn[best] = childProof;
+            dn[best] = childDisproof;
+        }
+    }
+
+    // Sets childProof and childDisproof for the position on the board, with toMove to move
+    private void evaluateChild(int toMove, int remaining) {
+        int winner = winner(toMove);
+        if (winner == attacker) {
+            childProof = 0;
+            childDisproof = INFINITY;
+        } else if ((winner != Board.EMPTY) || (remaining == 0)) {
+            childProof = INFINITY;
+            childDisproof = 0;
+        } else {
+            long entry = lookup(key(toMove, remaining));
+            if (entry >= 0) {
+                childProof = proofs[(int) entry];
+                childDisproof = disproofs[(int) entry];
+            } else {
+                childProof = 1;
+                childDisproof = 1;
+            }
+        }
+    }
+
+    // Writes a winning line from a proven position into line, and returns its length
+    private int extractLine(int toMove, int remaining, int ply, int[] line) {
+        if ((remaining == 0) || (winner(toMove) != Board.EMPTY)) {
+            return ply;
+        }
+        int[] moves = plyMoves[ply];
+        int n = MoveGenerator.generate(board, toMove, moveKind(toMove), moves);
+        int next = opposite(toMove);
+        for (int i = 0; i < n; i++) {
+            MoveGenerator.make(board, toMove, moves[i]);
+            evaluateChild(next, remaining - 1);
+            if ((childProof != 0) && (childDisproof != 0)) {
+                // Evicted from the table; prove this child again
+                search(next, remaining - 1, ply + 1, INFINITY, INFINITY);
+                evaluateChild(next, remaining - 1);
+            }
+            if (childProof == 0) {
+                // Any move of the attacker that wins, or any defence, since all of them lose
+                line[ply] = moves[i];
+                int length = extractLine(next, remaining - 1, ply + 1, line);
+                MoveGenerator.unmake(board, toMove, moves[i]);
+                return length;
+            }
+            MoveGenerator.unmake(board, toMove, moves[i]);
+        }
+        return ply;
+    }
+
+    // Returns the color that has won with toMove to move, or Board.EMPTY
+    private int winner(int toMove) {
+        if (NetworkFinder.hasWinningNetwork(toMove, board)) {
+            return toMove;
+        } else if (NetworkFinder.hasWinningNetwork(opposite(toMove), board)) {
+            return opposite(toMove);
+        }
+        return Board.EMPTY;
+    }
+
+    private int moveKind(int color) {
+        return (board.numPieces(color) < 10) ? Move.ADD : Move.STEP;
+    }
+
+    private static int opposite(int color) {
+        return (color == Board.WHITE) ? Board.BLACK : Board.WHITE;
+    }
+
+    // Proofs depend on the plies left, so they are part of the key
+    private long key(int toMove, int remaining) {
+        return board.hashKey(toMove) ^ (remaining * 0x9E3779B97F4A7C15L) ^ ((long) attacker << 62);
+    }
+
+    // Returns the slot holding the key, or -1
+    private long lookup(long key) {
+        int i = (int) key & mask;
+        if (keys[i] == key) {
+            return i;
+        }
+        return -1;
+    }
+
+    private void store(long key, long proof, long disproof) {
+        int i = (int) key & mask;
+        keys[i] = key;
+        proofs[i] = proof;
+        disproofs[i] = disproof;
+    }
+
+    /**
+    * Returns whether the attacker can force a win within the given plies, by trying every
+    * move of both colors.  Slow; used to check solve().
+    *
+    * @param board The position, left as it was found
+    * @param attacker The color trying to win
+    * @param toMove The color to move
+    * @param plies The most plies the win may take
+    * @param buffers A move buffer for each remaining ply, MoveGenerator.MAX_MOVES long
+    */
+    static boolean forcesWin(Board board, int attacker, int toMove, int plies, int[][] buffers) {
+        int next = opposite(toMove);
+        if (NetworkFinder.hasWinningNetwork(toMove, board)) {
+            return toMove == attacker;
+        } else if (NetworkFinder.hasWinningNetwork(next, board)) {
+            return next == attacker;
+        } else if (plies == 0) {
+            return false;
+        }
+        int[] moves = buffers[plies - 1];
+        int kind = (board.numPieces(toMove) < 10) ? Move.ADD : Move.STEP;
+        int n = MoveGenerator.generate(board, toMove, kind, moves);
+        if (n == 0) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            MoveGenerator.make(board, toMove, moves[i]);
+            boolean wins = forcesWin(board, attacker, next, plies - 1, buffers);
+            MoveGenerator.unmake(board, toMove, moves[i]);
+            if (wins == (toMove == attacker)) {
+                return wins;
+            }
+        }
+        return toMove != attacker;
+    }
+
+    // Plays random moves from the empty board, white first, and returns the position, or null
+    // if a network was made on the way
+    private static Board randomPosition(java.util.Random random, int numMoves) {
+        Board board = new Board();
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int color = Board.WHITE;
+        for (int i = 0; i < numMoves; i++) {
+            int kind = (board.numPieces(color) < 10) ? Move.ADD : Move.STEP;
+            int n = MoveGenerator.generate(board, color, kind, moves);
+            MoveGenerator.make(board, color, moves[random.nextInt(n)]);
+            if (NetworkFinder.hasWinningNetwork(Board.WHITE, board) ||
+                NetworkFinder.hasWinningNetwork(Board.BLACK, board)) {
+                return null;
+            }
+            color = opposite(color);
+        }
+        return board;
+    }
+
+    // Adds, white first, after which white wins in 5 plies, but not in 3
+    private static final int[][] DEEP_WIN = {
+        { 0, 1 }, { 5, 4 }, { 7, 6 }, { 1, 2 }, { 2, 6 }, { 6, 6 },
+        { 1, 4 }, { 1, 6 }, { 4, 4 }, { 4, 5 }, { 0, 4 }, { 6, 0 }
+    };
+
+    // Returns a white MachinePlayer of the given search depth that has played DEEP_WIN
+    private static MachinePlayer deepWinPlayer(int depth) {
+        MachinePlayer p = new MachinePlayer(1, depth);
+        for (int i = 0; i < DEEP_WIN.length; i++) {
+            Move m = new Move(DEEP_WIN[i][0], DEEP_WIN[i][1]);
+            if (i % 2 == 0) {
+                p.forceMove(m);
+            } else {
+                p.opponentMove(m);
+            }
+        }
+        return p;
+    }
+
+    public static void main(String[] args) {
+        ProofNumberSearch solver = new ProofNumberSearch(1 << 12, 10000000);
+        int[][] buffers = new int[3][MoveGenerator.MAX_MOVES];
+        java.util.Random random = new java.util.Random(16);
+        boolean allAgree = true;
+
+        // Add-phase positions are checked to 3 plies; step moves are too many for more than 2
+        int checked = 0;
+        int proven = 0;
+        while (checked < 120) {
+            boolean stepPhase = checked >= 80;
+            int numMoves = stepPhase ? 20 + random.nextInt(10) : 6 + random.nextInt(12);
+            Board board = randomPosition(random, numMoves);
+            if (board == null) {
+                continue;
+            }
+            int toMove = (numMoves % 2 == 0) ? Board.WHITE : Board.BLACK;
+            int attacker = random.nextBoolean() ? toMove : opposite(toMove);
+            for (int plies = 1; plies <= (stepPhase ? 2 : 3); plies++) {
+                long key = board.hashKey();
+                boolean expected = forcesWin(board, attacker, toMove, plies, buffers);
+                Move[] line = solver.solve(board, attacker, toMove, plies);
+                if ((line != null) != expected) {
+                    System.out.println("Solver says " + (line != null) + " but minimax says " + expected +
+                                       " at " + plies + " plies:\n" + board);
+                    allAgree = false;
+                }
+                if (board.hashKey() != key) {
+                    System.out.println("Solver left the board changed:\n" + board);
+                    allAgree = false;
+                }
+                if (expected) {
+                    proven++;
+                }
+            }
+            checked++;
+        }
+        System.out.println(checked + " positions to 1-3 plies, " + proven + " wins found by minimax");
+
+        // A win a depth-1 search scores as a small edge; the solver finds it 4 plies deeper
+        MachinePlayer plain = deepWinPlayer(1);
+        Board board = new Board();
+        for (int i = 0; i < DEEP_WIN.length; i++) {
+            int color = (i % 2 == 0) ? Board.WHITE : Board.BLACK;
+            MoveGenerator.make(board, color, MoveEncoding.encode(new Move(DEEP_WIN[i][0], DEEP_WIN[i][1])));
+        }
+        Move[] line = solver.solve(board, Board.WHITE, Board.WHITE, 5);
+        boolean deepOk = (line != null) && (line.length == 5) && !forcesWin(board, Board.WHITE, Board.WHITE, 3, buffers);
+        Move searched = plain.chooseMove();
+        MachinePlayer solving = deepWinPlayer(1);
+        solving.setForcedWinSolver(4, 100000);
+        Move solved = solving.chooseMove();
+        deepOk = deepOk && (MoveEncoding.encode(searched) != MoveEncoding.encode(line[0])) &&
+                 (MoveEncoding.encode(solved) == MoveEncoding.encode(line[0]));
+        System.out.println("Depth-1 search plays " + searched + ", with the solver " + solved +
+                           (deepOk ? ", the first move of a 5-ply win" : ", WRONG"));
+        System.out.println((allAgree && deepOk) ? "Solver agrees with minimax" : "Solver is WRONG");
+    }
+}
@@ -0,0 +1,180 @@
+/* SearchStats.java */
+
+package player;
+
+/**
+* Counters describing one search, and the snapshot of them MachinePlayer keeps after each
+* move.  Every search thread owns its counters and updates them as plain fields, with no
+* locking; when the helper threads stop, the main search merges their counts into its own.
+*
+* Nodes and beta cutoffs are always counted.  Leaves, win checks, evaluations and table
+* probes are only counted when DETAILED is true.  It is a compile-time constant, so when it is
+* false the compiler drops those counters, and the timing of win checks, from the search.
+*/
+public final class SearchStats {
+
+    /**
+    * Whether the detailed counters are kept.  Change it and recompile to turn them on.
+    */
+    static final boolean DETAILED = false;
+
+    long nodes; // Positions searched, including quiescence positions
+    long leaves; // Positions scored without searching a move: wins, the horizon, and stand-pats
+    long betaCutoffs; // Moves that failed high
+    long firstMoveCutoffs; // Those cutoffs caused by the first move searched
+    long winChecks; // Calls to MachinePlayer.hasWonGame()
+    long winCheckNanos; // Time spent in those calls
+    long evaluations; // Calls to MachinePlayer.evaluateBoard()
+    long tableProbes; // Transposition table probes
+    long tableHits; // Probes that found the position
+    int depth; // Depth of the deepest completed iteration
+    long nanos; // Wall-clock time of the move
+
+    /**
+    * Sets every counter to zero
+    */
+    void reset() {
+        nodes = 0;
+        leaves = 0;
+        betaCutoffs = 0;
+        firstMoveCutoffs = 0;
+        winChecks = 0;
+        winCheckNanos = 0;
+        evaluations = 0;
+        tableProbes = 0;
+        tableHits = 0;
+        depth = 0;
+        nanos = 0;
+    }
+
+    /**
+    * Adds the counts of another thread's search to these.  The depth and time are kept.
+    *
+    * @param other Counters no longer being updated
+    */
+    void merge(SearchStats other) {
+        nodes += other.nodes;
+        leaves += other.leaves;
+        betaCutoffs += other.betaCutoffs;
+        firstMoveCutoffs += other.firstMoveCutoffs;
+        winChecks += other.winChecks;
+        winCheckNanos += other.winCheckNanos;
+        evaluations += other.evaluations;
+        tableProbes += other.tableProbes;
+        tableHits += other.tableHits;
+    }
+
+    /**
+    * Makes these counters a copy of other's
+    */
+    void copyFrom(SearchStats other) {
+        reset();
+        merge(other);
+        depth = other.depth;
+        nanos = other.nanos;
+    }
+
+    /**
+    * Returns whether the detailed counters were kept.  When not, they read 0.
+    */
+    public boolean detailed() {
+        return DETAILED;
+    }
+
+    public long nodes() {
+        return nodes;
+    }
+
+    public long leaves() {
+        return leaves;
+    }
+
+    public long betaCutoffs() {
+        return betaCutoffs;
+    }
+
+    /**
+    * Returns the fraction of beta cutoffs caused by the first move searched.  Values near 1
+    * mean the move ordering is close to ideal.
+    *
+    * @return The first-move cutoff rate, or 0 if there were no cutoffs
+    */
+    public double firstMoveCutoffRate() {
+        if (betaCutoffs == 0) {
+            return 0;
+        }
+        return (double) firstMoveCutoffs / betaCutoffs;
+    }
+
+    public long winChecks() {
+        return winChecks;
+    }
+
+    /**
+    * Returns the time spent checking for wins, in milliseconds
+    */
+    public double winCheckMillis() {
+        return winCheckNanos / 1e6;
+    }
+
+    public long evaluations() {
+        return evaluations;
+    }
+
+    /**
+    * Returns the fraction of transposition table probes that found the position
+    *
+    * @return The hit rate, or 0 if there were no probes
+    */
+    public double tableHitRate() {
+        if (tableProbes == 0) {
+            return 0;
+        }
+        return (double) tableHits / tableProbes;
+    }
+
+    public int depthReached() {
+        return depth;
+    }
+
+    /**
+    * Returns the wall-clock time of the move, in milliseconds
+    */
+    public double millis() {
+        return nanos / 1e6;
+    }
+
+    /**
+    * Returns the nodes searched per second of the move's wall-clock time
+    */
+    public double nodesPerSecond() {
+        if (nanos == 0) {
+            return 0;
+        }
+        return nodes * 1e9 / nanos;
+    }
+
+    /**
+    * Returns the effective branching factor: the depth-th root of the nodes searched
+    *
+    * @return The branching factor, or 0 if no search was completed
+    */
+    public double branchingFactor() {
+        if ((depth == 0) || (nodes == 0)) {
+            return 0;
+        }
+        return Math.pow(nodes, 1.0 / depth);
+    }
+
+    public String toString() {
+        String s = "depth " + depth + ", " + nodes + " nodes in " + Math.round(millis()) + " ms (" +
+            Math.round(nodesPerSecond()) + "/s), branching factor " + String.format("%.2f", branchingFactor()) +
+            ", " + betaCutoffs + " cutoffs (" + String.format("%.1f", 100 * firstMoveCutoffRate()) + "% first move)";
+        if (DETAILED) {
+            s += ", " + leaves + " leaves, " + evaluations + " evaluations, " + winChecks + " win checks in " +
+                String.format("%.1f", winCheckMillis()) + " ms, table hit rate " +
+                String.format("%.1f", 100 * tableHitRate()) + "%";
+        }
+        return s;
+    }
+}
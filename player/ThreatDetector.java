@@ -0,0 +1,124 @@
+/* ThreatDetector.java */
+
+package player;
+
+import board.*;
+
+/**
+* Static methods that find network threats: positions where a color can complete a winning
+* network with its next move.  Only moves that could possibly finish a network are tried on
+* the board, so a position far from a network is rejected without trying any.
+*/
+class ThreatDetector {
+
+    /**
+    * Returns a move that completes a winning network for the given color without completing
+    * one for the other color, or MoveEncoding.NONE if there is none.  The board is left as it
+    * was found.
+    *
+    * @param board The board
+    * @param color The color to move
+    * @param moveKind Move.ADD or Move.STEP, the kind of move the color must make
+    * @param buffer A buffer for move generation, at least MoveGenerator.MAX_MOVES long
+    * @return The completing move code, or MoveEncoding.NONE
+    */
+    static int completingMove(Board board, int color, int moveKind, int[] buffer) {
+        long pieces = board.pieces(color);
+        int count = Long.bitCount(pieces);
+        if (moveKind == Move.ADD) {
+            count++;
+        }
+        boolean hasStart = (pieces & NetworkFinder.startGoalLine(color)) != 0;
+        boolean hasEnd = (pieces & NetworkFinder.endGoalLine(color)) != 0;
+        if ((count < 6) || (!hasStart && !hasEnd)) {
+            return MoveEncoding.NONE;
+        }
+        if (moveKind == Move.ADD) {
+            // An added piece must join the pieces connected to the start goal line, and one
+            // move fills at most one empty goal line, so only a few squares are tried
+            long targets = NetworkFinder.extensionSquares(color, board) & MoveGenerator.addSquares(board, color);
+            if (!hasEnd) {
+                targets &= NetworkFinder.endGoalLine(color);
+            }
+            while (targets != 0) {
+                int to = Long.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+                board.add(color, Board.squareX(to), Board.squareY(to));
+                boolean completes = NetworkFinder.hasWinningNetwork(color, board);
+                board.remove(Board.squareX(to), Board.squareY(to));
+                if (completes) {
+                    return MoveEncoding.add(to);
+                }
+            }
+            return MoveEncoding.NONE;
+        }
+        // Step moves come grouped by the piece moved, so the squares a step could complete a
+        // network on are worked out once per piece
+        int other = (color == Board.WHITE) ? Board.BLACK : Board.WHITE;
+        int n = MoveGenerator.generate(board, color, moveKind, buffer);
+        int lastFrom = -1;
+        long targets = 0;
+        for (int i = 0; i < n; i++) {
+            int code = buffer[i];
+            int from = MoveEncoding.from(code);
+            if (from != lastFrom) {
+                lastFrom = from;
+                targets = stepTargets(board, color, from);
+            }
+            if (((targets >>> MoveEncoding.to(code)) & 1L) == 0) {
+                continue;
+            }
+            MoveGenerator.make(board, color, code);
+            // A step can open a line for the other color; then the other color wins instead
+            boolean completes = NetworkFinder.hasWinningNetwork(color, board) &&
+                !NetworkFinder.hasWinningNetwork(other, board);
+            MoveGenerator.unmake(board, color, code);
+            if (completes) {
+                return code;
+            }
+        }
+        return MoveEncoding.NONE;
+    }
+
+    // Returns the squares where the piece on square from could land to complete a network
+    private static long stepTargets(Board board, int color, int from) {
+        int x = Board.squareX(from);
+        int y = Board.squareY(from);
+        board.remove(x, y);
+        long targets;
+        if (NetworkFinder.hasWinningNetwork(color, board)) {
+            // Lifting the piece alone opens a network, which it may or may not block again
+            // wherever it lands
+            targets = ~0L;
+        } else {
+            targets = NetworkFinder.extensionSquares(color, board);
+            if ((board.pieces(color) & NetworkFinder.endGoalLine(color)) == 0) {
+                targets &= NetworkFinder.endGoalLine(color);
+            }
+        }
+        board.add(color, x, y);
+        return targets;
+    }
+
+    /**
+    * Returns the squares where a move of the other color could stop the given completing
+    * move.  For an add, these are its destination and every square between two pieces that
+    * would be connected once it is played.  A step can also be stopped by a move that leaves
+    * the other color one piece short of its own network, with the stepping piece the last
+    * thing in its way; that is too costly to pin down, so every square is returned.
+    *
+    * @param board The board
+    * @param color The color threatening to complete a network
+    * @param threat The completing move code
+    * @return Mask of the destinations of moves that might stop the threat
+    */
+    static long blockingSquares(Board board, int color, int threat) {
+        if (MoveEncoding.kind(threat) == Move.STEP) {
+            return ~0L;
+        }
+        MoveGenerator.make(board, color, threat);
+        long squares = board.connectionSquares(color);
+        MoveGenerator.unmake(board, color, threat);
+        return squares | (1L << MoveEncoding.to(threat));
+    }
+}
@@ -0,0 +1,433 @@
+/* Tournament.java */
+
+package player;
+
+import board.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+* Plays many games between MachinePlayers of two search depths, A and B, in parallel on every
+* core, and reports games per second, how long moves took and how often each side won.  Each
+* game is one task on a fixed pool of threads.
+*
+* The players are driven only through the Player interface, and closed when their game ends.
+* A referee keeps its own board, checks every move against the rules and looks for networks
+* itself, without using any player's code, so a buggy player cannot corrupt the results.  As
+* with the Network referee, an illegal move or a quit loses the game, and a move that
+* completes a network for both colors wins for the other color.  A game still going after
+* MAX_GAME_MOVES is a draw.
+*
+* Each game opens with a few random legal moves chosen by the referee, so that games differ.
+* Every opening is played twice, with A as white and then as black.
+*
+* Usage: java player.Tournament [games] [depth A] [depth B] [opening plies] [threads]
+*/
+public class Tournament {
+
+    private static final int MAX_GAME_MOVES = 200; // A game this long is a draw
+    private static final double Z_95 = 1.96; // Normal quantile of a two-sided 95% interval
+
+    // How a game ended
+    private static final int NETWORK = 0;
+    private static final int ILLEGAL_MOVE = 1;
+    private static final int QUIT = 2;
+    private static final int MOVE_LIMIT = 3;
+    private static final int REJECTED_MOVE = 4;
+    private static final String[] ENDINGS = { "network", "illegal move", "quit", "move limit",
+                                              "legal move rejected by a player" };
+
+    // Steps to the eight neighbouring squares
+    private static final int[] DX = { 1, 1, 0, -1, -1, -1, 0, 1 };
+    private static final int[] DY = { 0, 1, 1, 1, 0, -1, -1, -1 };
+
+    /**
+    * The outcome of one game
+    */
+    private static class GameResult {
+        boolean aWasWhite;
+        int winner = Board.EMPTY; // Board.WHITE, Board.BLACK, or Board.EMPTY for no winner
+        int ending;
+        int moves;
+        long[] moveNanos = new long[MAX_GAME_MOVES]; // Time taken by each chooseMove()
+        int timedMoves;
+    }
+
+    /**
+    * Plays one game.  The referee picks the first openingPlies moves at random from the seed
+    * and forces them on the player to move; after that the players choose.
+    *
+    * @param depthA The search depth of player A
+    * @param depthB The search depth of player B
+    * @param aIsWhite Whether A plays white
+    * @param openingPlies The number of random opening moves
+    * @param seed Seed for the opening
+    * @return The outcome
+    */
+    static GameResult playGame(int depthA, int depthB, boolean aIsWhite, int openingPlies, long seed) {
+        MachinePlayer white = new MachinePlayer(1, aIsWhite ? depthA : depthB);
+        MachinePlayer black = new MachinePlayer(0, aIsWhite ? depthB : depthA);
+        try {
+            return playGame(white, black, aIsWhite, openingPlies, seed);
+        } finally {
+            // However the game ended, stop any search the players still have running
+            white.close();
+            black.close();
+        }
+    }
+
+    // Plays one game between the given players, as playGame() above
+    private static GameResult playGame(Player white, Player black, boolean aIsWhite, int openingPlies, long seed) {
+        GameResult result = new GameResult();
+        result.aWasWhite = aIsWhite;
+        Player mover = white;
+        Player waiter = black;
+        Board board = new Board();
+        int[] added = new int[3]; // Chips added by each Board color
+        Random random = new Random(seed);
+        int color = Board.WHITE;
+        for (int ply = 0; ply < MAX_GAME_MOVES; ply++) {
+            int other = Board.WHITE + Board.BLACK - color;
+            result.moves = ply + 1;
+            Move m;
+            if (ply < openingPlies) {
+                m = randomMove(board, color, added[color], random);
+                if (!mover.forceMove(m)) {
+                    result.ending = REJECTED_MOVE;
+                    return result;
+                }
+            } else {
+                long start = System.nanoTime();
+                m = mover.chooseMove();
+                result.moveNanos[result.timedMoves++] = System.nanoTime() - start;
+                if ((m == null) || (m.moveKind == Move.QUIT)) {
+                    result.ending = QUIT;
+                    result.winner = other;
+                    return result;
+                }
+                if (!isLegal(board, color, added[color], m)) {
+                    result.ending = ILLEGAL_MOVE;
+                    result.winner = other;
+                    return result;
+                }
+            }
+            play(board, color, m);
+            if (m.moveKind == Move.ADD) {
+                added[color]++;
+            }
+            if (!waiter.opponentMove(m)) {
+                result.ending = REJECTED_MOVE;
+                return result;
+            }
+            // A move that completes both colors' networks wins for the other color
+            if (hasNetwork(board, other)) {
+                result.ending = NETWORK;
+                result.winner = other;
+                return result;
+            }
+            if (hasNetwork(board, color)) {
+                result.ending = NETWORK;
+                result.winner = color;
+                return result;
+            }
+            Player t = mover;
+            mover = waiter;
+            waiter = t;
+            color = other;
+        }
+        result.ending = MOVE_LIMIT;
+        return result;
+    }
+
+    // Returns a legal move for the color chosen uniformly at random
+    private static Move randomMove(Board board, int color, int added, Random random) {
+        List<Move> moves = new ArrayList<Move>();
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                if (added < 10) {
+                    Move m = new Move(x, y);
+                    if (isLegal(board, color, added, m)) {
+                        moves.add(m);
+                    }
+                } else if (board.piece(x, y) == color) {
+                    for (int toX = 0; toX < 8; toX++) {
+                        for (int toY = 0; toY < 8; toY++) {
+                            Move m = new Move(toX, toY, x, y);
+                            if (isLegal(board, color, added, m)) {
+                                moves.add(m);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return moves.get(random.nextInt(moves.size()));
+    }
+
+    // Plays a legal move on the referee's board
+    private static void play(Board board, int color, Move m) {
+        if (m.moveKind == Move.STEP) {
+            board.remove(m.x2, m.y2);
+        }
+        board.add(color, m.x1, m.y1);
+    }
+
+    /**
+    * Returns whether a move is legal by the rules of the game.  A color adds chips until it
+    * has added ten, then steps.  A chip may not go on a corner, in the other color's goal
+    * areas, on another chip, or where it would be in a group of three or more adjacent chips
+    * of its color.
+    *
+    * @param board The referee's board, left unchanged
+    * @param color Board.WHITE or Board.BLACK
+    * @param added The number of chips the color has added so far
+    * @param m The move
+    * @return Whether the move is legal
+    */
+    static boolean isLegal(Board board, int color, int added, Move m) {
+        if (m.moveKind != ((added < 10) ? Move.ADD : Move.STEP)) {
+            return false;
+        }
+        int x = m.x1;
+        int y = m.y1;
+        if (!onBoard(x, y) || (board.piece(x, y) != Board.EMPTY)) {
+            return false;
+        }
+        if (((x == 0) || (x == 7)) && ((y == 0) || (y == 7))) {
+            return false;
+        }
+        if ((color == Board.WHITE) ? ((y == 0) || (y == 7)) : ((x == 0) || (x == 7))) {
+            return false;
+        }
+        if ((m.moveKind == Move.STEP) && (!onBoard(m.x2, m.y2) || (board.piece(m.x2, m.y2) != color))) {
+            return false;
+        }
+        play(board, color, m);
+        boolean clustered = inCluster(board, color, x, y);
+        board.remove(x, y);
+        if (m.moveKind == Move.STEP) {
+            board.add(color, m.x2, m.y2);
+        }
+        return !clustered;
+    }
+
+    // Returns whether the chip at (x, y) is in a group of three or more adjacent chips of its color
+    private static boolean inCluster(Board board, int color, int x, int y) {
+        int neighbours = countNeighbours(board, color, x, y);
+        for (int d = 0; d < 8; d++) {
+            int nx = x + DX[d];
+            int ny = y + DY[d];
+            if (onBoard(nx, ny) && (board.piece(nx, ny) == color) && (countNeighbours(board, color, nx, ny) > 1)) {
+                return true;
+            }
+        }
+        return neighbours > 1;
+    }
+
+    // Returns the number of chips of the color adjacent to (x, y)
+    private static int countNeighbours(Board board, int color, int x, int y) {
+        int count = 0;
+        for (int d = 0; d < 8; d++) {
+            int nx = x + DX[d];
+            int ny = y + DY[d];
+            if (onBoard(nx, ny) && (board.piece(nx, ny) == color)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean onBoard(int x, int y) {
+        return (x >= 0) && (x < 8) && (y >= 0) && (y < 8);
+    }
+
+    /**
+    * Returns whether the color has a network: six or more of its chips from one of its goal
+    * areas to the other, each connected to the next along an unblocked line, turning at every
+    * chip, using no chip twice and no other chip in a goal area.  Black's goals are the top and
+    * bottom rows, white's the left and right columns.
+    *
+    * @param board The referee's board
+    * @param color Board.WHITE or Board.BLACK
+    * @return Whether the color has won
+    */
+    static boolean hasNetwork(Board board, int color) {
+        boolean[] used = new boolean[64];
+        for (int i = 1; i < 7; i++) {
+            int x = (color == Board.WHITE) ? 0 : i;
+            int y = (color == Board.WHITE) ? i : 0;
+            if (board.piece(x, y) == color) {
+                used[x + 8 * y] = true;
+                if (extendsToGoal(board, color, x, y, 1, -1, used)) {
+                    return true;
+                }
+                used[x + 8 * y] = false;
+            }
+        }
+        return false;
+    }
+
+    // Returns whether the path of the given length ending at (x, y), which it reached moving in
+    // direction arrival, can be extended to a network
+    private static boolean extendsToGoal(Board board, int color, int x, int y, int length, int arrival,
+                                         boolean[] used) {
+        for (int d = 0; d < 8; d++) {
+            if (d == arrival) {
+                // Passing straight through a chip is not allowed
+                continue;
+            }
+            int nx = x + DX[d];
+            int ny = y + DY[d];
+            while (onBoard(nx, ny) && (board.piece(nx, ny) == Board.EMPTY)) {
+                nx += DX[d];
+                ny += DY[d];
+            }
+            if (!onBoard(nx, ny) || (board.piece(nx, ny) != color) || used[nx + 8 * ny]) {
+                continue;
+            }
+            int goalCoordinate = (color == Board.WHITE) ? nx : ny;
+            if (goalCoordinate == 0) {
+                continue;
+            }
+            if (goalCoordinate == 7) {
+                if (length + 1 >= 6) {
+                    return true;
+                }
+                continue;
+            }
+            used[nx + 8 * ny] = true;
+            if (extendsToGoal(board, color, nx, ny, length + 1, d, used)) {
+                return true;
+            }
+            used[nx + 8 * ny] = false;
+        }
+        return false;
+    }
+
+    // Formats a proportion with its Wilson score 95% confidence interval
+    private static String proportion(long count, long trials) {
+        if (trials == 0) {
+            return "-";
+        }
+        double n = trials;
+        double p = count / n;
+        double z2 = Z_95 * Z_95;
+        double centre = (p + z2 / (2 * n)) / (1 + z2 / n);
+        double half = Z_95 * Math.sqrt(p * (1 - p) / n + z2 / (4 * n * n)) / (1 + z2 / n);
+        return String.format("%5d  %5.1f%%  (95%% CI %5.1f%% to %5.1f%%)", count, 100 * p,
+                             100 * Math.max(0, centre - half), 100 * Math.min(1, centre + half));
+    }
+
+    // Returns the q-th quantile of sorted values, by the nearest-rank method
+    private static long percentile(long[] sorted, double q) {
+        int rank = (int) Math.ceil(q * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    public static void main(String[] args) {
+        int games = 100;
+        int depthA = 2;
+        int depthB = 3;
+        int openingPlies = 2;
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 0) {
+            games = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            depthA = Integer.parseInt(args[1]);
+        }
+        if (args.length > 2) {
+            depthB = Integer.parseInt(args[2]);
+        }
+        if (args.length > 3) {
+            openingPlies = Integer.parseInt(args[3]);
+        }
+        if (args.length > 4) {
+            threads = Integer.parseInt(args[4]);
+        }
+        System.out.println(games + " games, A depth " + depthA + " against B depth " + depthB + ", " +
+                           openingPlies + " random opening plies, " + threads + " threads");
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<GameResult>> futures = new ArrayList<Future<GameResult>>();
+        long start = System.nanoTime();
+        for (int g = 0; g < games; g++) {
+            final boolean aIsWhite = (g % 2 == 0);
+            final long seed = g / 2;
+            final int a = depthA;
+            final int b = depthB;
+            final int plies = openingPlies;
+            futures.add(pool.submit(new Callable<GameResult>() {
+                public GameResult call() {
+                    return playGame(a, b, aIsWhite, plies, seed);
+                }
+            }));
+        }
+        GameResult[] results = new GameResult[games];
+        try {
+            for (int g = 0; g < games; g++) {
+                results[g] = futures.get(g).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long moves = 0;
+        int timed = 0;
+        for (GameResult r : results) {
+            moves += r.moves;
+            timed += r.timedMoves;
+        }
+        long[] latencies = new long[timed];
+        int aWins = 0;
+        int bWins = 0;
+        int whiteWins = 0;
+        int[] endings = new int[ENDINGS.length];
+        timed = 0;
+        for (GameResult r : results) {
+            System.arraycopy(r.moveNanos, 0, latencies, timed, r.timedMoves);
+            timed += r.timedMoves;
+            endings[r.ending]++;
+            if (r.winner == Board.WHITE) {
+                whiteWins++;
+            }
+            if (r.winner != Board.EMPTY) {
+                if ((r.winner == Board.WHITE) == r.aWasWhite) {
+                    aWins++;
+                } else {
+                    bWins++;
+                }
+            }
+        }
+        Arrays.sort(latencies);
+
+        System.out.println(String.format("%.1f s, %.2f games/s, %.1f moves/s", seconds, games / seconds, moves / seconds));
+        if (latencies.length > 0) {
+            System.out.println(String.format("chooseMove() ms: p50 %.2f  p90 %.2f  p99 %.2f  max %.2f",
+                                             percentile(latencies, 0.5) / 1e6, percentile(latencies, 0.9) / 1e6,
+                                             percentile(latencies, 0.99) / 1e6, latencies[latencies.length - 1] / 1e6));
+        }
+        System.out.println("A wins     " + proportion(aWins, games));
+        System.out.println("B wins     " + proportion(bWins, games));
+        System.out.println("No winner  " + proportion(games - aWins - bWins, games));
+        System.out.println("White wins " + proportion(whiteWins, games));
+        for (int e = 0; e < ENDINGS.length; e++) {
+            if (endings[e] > 0) {
+                System.out.println(endings[e] + " ended by " + ENDINGS[e]);
+            }
+        }
+    }
+}
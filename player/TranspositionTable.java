@@ -0,0 +1,130 @@
+/* TranspositionTable.java */
+
+package player;
+
+/**
+* A fixed-size hash table of search results keyed by Zobrist key. Each slot is a pair of
+* longs: the full key and a packed entry holding the score (bits 0-31), remaining depth
+* (bits 32-39), bound type (bits 40-41), best move code (bits 42-55) and the age of the search
+* that stored it (bits 56-63).
+* A probe that misses returns 0, which is never a valid entry since every stored entry has
+* a non-zero bound type.
+*
+* The table is kept from one move to the next.  Each search calls newSearch() first, and an
+* entry left by an earlier search may be replaced by any new result however shallow, so old
+* positions that are no longer reachable give way.  An old entry that is probed again is
+* brought up to the current age.
+*
+* The table may be shared by several search threads without locking.  Each slot stores the
+* key XORed with the entry, so a slot torn by two concurrent writers fails the key check on
+* the next probe and reads as a miss.
+*/
+class TranspositionTable {
+
+    static final int EXACT = 1; // The score is the true minimax value
+    static final int LOWER = 2; // The true value is at least the score
+    static final int UPPER = 3; // The true value is at most the score
+
+    private final long[] keys;
+    private final long[] entries;
+    private final int mask;
+    private int age = 0; // Age of the current search, from 0 to 255
+
+    /**
+    * Creates an empty table. The number of slots is rounded down to a power of two.
+    *
+    * @param size The requested number of slots, at least 1
+    */
+    TranspositionTable(int size) {
+        int slots = Integer.highestOneBit(Math.max(1, size));
+        keys = new long[slots];
+        entries = new long[slots];
+        mask = slots - 1;
+    }
+
+    /**
+    * Returns the packed entry stored for the key, or 0 if there is none
+    *
+    * @param key The Zobrist key of the position
+    * @return The packed entry
+    */
+    long probe(long key) {
+        int i = (int) key & mask;
+        long entry = entries[i];
+        if ((keys[i] ^ entry) == key) {
+            if (age(entry) != age) {
+                // Still useful, so keep it from being replaced as stale
+                entry = (entry & ~(0xFFL << 56)) | ((long) age << 56);
+                keys[i] = key ^ entry;
+                entries[i] = entry;
+            }
+            return entry;
+        }
+        return 0;
+    }
+
+    /**
+    * Stores a search result. An occupied slot holding a different position is only
+    * replaced by a result searched at least as deep, or if an earlier search stored it.
+    *
+    * @param key The Zobrist key of the position
+    * @param depth The remaining depth searched
+    * @param bound EXACT, LOWER or UPPER
+    * @param score The score found
+    * @param move The code of the best move, or MoveEncoding.NONE
+    */
+    void store(long key, int depth, int bound, int score, int move) {
+        int i = (int) key & mask;
+        long old = entries[i];
+        if ((old != 0) && ((keys[i] ^ old) != key) && (depth(old) > depth) && (age(old) == age)) {
+            return;
+        }
+        long entry = (score & 0xFFFFFFFFL) | ((long) depth << 32) | ((long) bound << 40) | ((long) move << 42) |
+            ((long) age << 56);
+        keys[i] = key ^ entry;
+        entries[i] = entry;
+    }
+
+    /**
+    * Starts a new search: entries stored before this call become stale.  Call it before the
+    * search threads start, from the thread that starts them.
+    */
+    void newSearch() {
+        age = (age + 1) & 0xFF;
+    }
+
+    /**
+    * Empties the table.
+    */
+    void clear() {
+        java.util.Arrays.fill(keys, 0);
+        java.util.Arrays.fill(entries, 0);
+    }
+
+    /**
+    * Returns the number of slots in the table
+    */
+    int size() {
+        return keys.length;
+    }
+
+    static int score(long entry) {
+        return (int) entry;
+    }
+
+    static int depth(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    static int bound(long entry) {
+        return (int) (entry >>> 40) & 3;
+    }
+
+    static int move(long entry) {
+        return (int) (entry >>> 42) & 0x3FFF;
+    }
+
+    static int age(long entry) {
+        return (int) (entry >>> 56) & 0xFF;
+    }
+}
@@ -0,0 +1,41 @@
+/* WinCheckEvent.java */
+
+package player;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+* Flight Recorder event for a call to MachinePlayer.hasWonGame() that took longer than the
+* threshold.  Off by default, like ChooseMoveEvent.  The search checks for wins tens of
+* thousands of times a move, so MachinePlayer only creates the event once the recorder has
+* been started.
+*/
+@Name("network.WinCheck")
+@Label("Slow Win Check")
+@Category({ "Network", "Search" })
+@Description("A hasWonGame() call slower than the threshold, with its position")
+@Enabled(false)
+@Threshold("20 us")
+@StackTrace(false)
+final class WinCheckEvent extends Event {
+
+    @Label("Color")
+    String color;
+
+    @Label("Won")
+    boolean won;
+
+    @Label("Position Key")
+    @Description("Board.hashKey() of the position, the same in every network event")
+    long positionKey;
+
+    @Label("Board")
+    String board;
+}